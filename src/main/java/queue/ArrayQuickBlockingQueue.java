@@ -4,9 +4,10 @@ import java.util.AbstractQueue;
 import java.util.Collection;
 import java.util.Iterator;
 import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.locks.Condition;
-import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BooleanSupplier;
 
 /* A single-producer-single-consumer bounded blocking queue 
  *  
@@ -24,10 +25,51 @@ import java.util.concurrent.locks.ReentrantLock;
  * no use of lock or CAS. However, if queue is empty, the caller will be blocked and 
  * later notified when the queue is not empty. 
  * 
- * The size of the queue can be optimized at the order of 2 to improve the speed of 
- * index increment.
+ * How the caller waits is up to the WaitStrategy given to the constructor: it may 
+ * busy-spin, spin then yield, back off with LockSupport.parkNanos, or block on a 
+ * lock and condition, which is the default. The queue only tells the strategy what 
+ * to wait for, and signals it after a change the other side may be waiting for. 
  * 
- * peek(), iterator(), and drainTo() are not supported at this point.
+ * As in ArrayQuickQueue, the producer keeps a private copy of takeIndex and the 
+ * consumer keeps a private copy of putIndex, so that the index of the other side 
+ * is read only when the queue looks full or empty. Each index and its owner's copy are held in a PaddedIndex 
+ * of their own, away from the other side and from the read-only fields.
+ * 
+ * Every add and remove, offer() and poll() included, publishes its index with a 
+ * volatile store and then calls signal() on the strategy. The strategy knows whether 
+ * anybody is waiting: BlockingWaitStrategy counts its waiters, and takes the lock 
+ * only if there is one, and the spinning strategies have nobody to wake. So as long 
+ * as neither side has to wait, no lock is taken and the other side's index is not 
+ * read, however small the queue. The store has to be volatile rather than ordered: 
+ * it is followed by the read of the waiter count, and a waiter writes the count 
+ * before checking the index, so without the full fence both could miss each other 
+ * and wait forever.
+ * 
+ * As in ArrayQuickQueue, the indexes are 64-bit sequences mapped onto an array whose 
+ * capacity is the given size rounded up to a power of 2, and all of it is used. 
+ * 
+ * drainTo() removes every item available with a single update of takeIndex, and 
+ * signals at most once per call. 
+ * 
+ * takeBatch() waits like take() for the first item, then lingers until the batch 
+ * is full or the linger time is up, and removes the whole batch with a single 
+ * update of takeIndex and a single signal, the way a Kafka producer fills a batch 
+ * before sending it. 
+ * 
+ * offerAsync() and pollAsync() never block. When the item cannot be added or removed 
+ * right away, the caller hands its side of the queue over to the other side and 
+ * gets a future back: the future is held in pendingOffer or pendingPoll, and the 
+ * other side, after each change it makes, looks there. If the change lets the 
+ * pending call go through, it takes the future out with a CAS, adds or removes the 
+ * item on the caller's behalf, and completes the future, so callbacks attached to 
+ * it without an executor run on the other side's thread. Until the future is 
+ * complete, the caller's side belongs to whoever completes it: the producer must 
+ * not add, nor the consumer remove, in any other way. As with signal(), the pending 
+ * future is written with a volatile store before the index is checked again, and 
+ * read after the index is published, so either the caller sees the change or the 
+ * other side sees the future. 
+ * 
+ * peek() and iterator() are not supported at this point.
  * 
  * 
  * == performance benchmark ==
@@ -43,98 +85,122 @@ import java.util.concurrent.locks.ReentrantLock;
 public class ArrayQuickBlockingQueue<E> extends AbstractQueue<E> implements
 		BlockingQueue<E> {
 
-	/* number of items queued */
-	private final int size;
+	/* maximum number of items queued, a power of 2 */
+	private final int capacity;
+
+	/* capacity - 1, maps an index onto items */
+	private final int mask;
 
 	/* queued items */
 	private final E[] items;
 
-	/* item index for next poll and remove */
-	private volatile int takeIndex;
-
-	/* item index for next offer and add */
-	private volatile int putIndex;
+	/*
+	 * item index for next poll and remove, with the consumer's copy of
+	 * putIndex in takeIndex.cache
+	 */
+	private final PaddedIndex takeIndex;
 
-	/* used for notification */
-	private final ReentrantLock lock;
+	/*
+	 * item index for next offer and add, with the producer's copy of
+	 * takeIndex in putIndex.cache
+	 */
+	private final PaddedIndex putIndex;
 
-	/* used for notification */
-	private final Condition cond;
+	/* how put() and take() wait, and are woken up */
+	private final WaitStrategy waitStrategy;
 
-	/* index increment */
-	private int inc(int pos) {
-		return (++pos == size) ? 0 : pos;
-	}
+	/* what take() waits for */
+	private final BooleanSupplier notEmpty;
 
-	public ArrayQuickBlockingQueue(int size) {
-		this.size = size;
-		this.items = (E[]) new Object[size];
-		this.takeIndex = 0;
-		this.putIndex = 0;
-		this.lock = new ReentrantLock();
-		this.cond = lock.newCondition();
-	}
+	/* what put() waits for */
+	private final BooleanSupplier notFull;
 
-	@Override
-	public E take() throws InterruptedException {
+	/*
+	 * the producer's offerAsync() waiting for room, completed by the consumer.
+	 * Held in an object of its own, as the queue itself is read-only.
+	 */
+	private final AtomicReference<PendingOffer<E>> pendingOffer = new AtomicReference<PendingOffer<E>>();
 
-		final ReentrantLock lock = this.lock;
+	/* the consumer's pollAsync() waiting for an item, completed by the producer */
+	private final AtomicReference<CompletableFuture<E>> pendingPoll = new AtomicReference<CompletableFuture<E>>();
 
-		int oldTakeIndex = takeIndex;
+	/* an offerAsync() not yet done, with its item */
+	private static final class PendingOffer<E> extends CompletableFuture<Void> {
 
-		/* while loop to check whether the queue is empty or not. */
+		final E item;
 
-		while (oldTakeIndex == putIndex) {
+		PendingOffer(E item) {
+			this.item = item;
+		}
+	}
 
-			/*
-			 * If queue has been found empty, we acquire the lock and check
-			 * again. It is possible that queue is empty before we acquire the
-			 * lock but not empty after we acquire.
-			 */
+	/*
+	 * size is rounded up to a power of 2. put() and take() block on a lock
+	 * when they have to wait.
+	 */
+	public ArrayQuickBlockingQueue(int size) {
+		this(size, new BlockingWaitStrategy());
+	}
 
-			lock.lock();
-			try {
-				if (oldTakeIndex == putIndex) {
-					cond.await();
-				}
+	/*
+	 * size is rounded up to a power of 2. waitStrategy must not be used by
+	 * another queue.
+	 */
+	public ArrayQuickBlockingQueue(int size, WaitStrategy waitStrategy) {
 
-				/*
-				 * else, we release the lock and check again. It is possible
-				 * that queue is not empty before we release the lock and
-				 * becomes empty after we release the lock.
-				 */
+		if (waitStrategy == null) {
+			throw new NullPointerException();
+		}
 
-			} finally {
+		final PaddedIndex takeIndex = new PaddedIndex(0);
+		final PaddedIndex putIndex = new PaddedIndex(0);
+
+		this.capacity = Pow2.roundToPowerOfTwo(size);
+		this.mask = capacity - 1;
+		this.items = (E[]) new Object[capacity];
+		this.takeIndex = takeIndex;
+		this.putIndex = putIndex;
+		this.waitStrategy = waitStrategy;
+		this.notEmpty = () -> takeIndex.get() != putIndex.get();
+		this.notFull = () -> putIndex.get() - takeIndex.get() != capacity;
+	}
 
-				lock.unlock();
-			}
-		}
+	@Override
+	public E take() throws InterruptedException {
 
-		E e = items[oldTakeIndex];
-		takeIndex = inc(oldTakeIndex);
+		final PaddedIndex takeIndex = this.takeIndex;
+		long oldTakeIndex = takeIndex.get();
 
 		/*
-		 * If the queue was full, the producer must be blocked if there is one.
+		 * check whether the queue is empty or not. putIndex is read only if
+		 * our copy of it says so.
 		 */
 
-		if (inc(putIndex) == oldTakeIndex) {
-			lock.lock();
+		if (oldTakeIndex == takeIndex.cache
+				&& oldTakeIndex == (takeIndex.cache = putIndex.get())) {
 
 			/*
-			 * No need to check again, because there could be no more than two
-			 * threads, with one being the consumer ourselves. If queue was
-			 * full, the producer must be blocked if there is one. Thus, the
-			 * state of putIndex and takeIndex will not change after we acquire
-			 * the lock.
+			 * If queue has been found empty, we wait until it is not, and
+			 * catch up with putIndex, as our copy must never fall behind
+			 * takeIndex.
 			 */
 
-			try {
-				cond.signal();
-			} finally {
-				lock.unlock();
-			}
+			waitStrategy.await(notEmpty);
+			takeIndex.cache = putIndex.get();
 		}
 
+		E e = items[(int) oldTakeIndex & mask];
+		takeIndex.set(oldTakeIndex + 1);
+
+		/*
+		 * The producer may be waiting for the slot. Whether it is, is up to
+		 * the strategy to tell, which costs no more than a read of a field
+		 * that only changes when somebody starts or stops waiting.
+		 */
+
+		waitStrategy.signal();
+		completeOffer();
+
 		return e;
 	}
 
@@ -145,61 +211,33 @@ public class ArrayQuickBlockingQueue<E> extends AbstractQueue<E> implements
 			throw new NullPointerException();
 		}
 
-		final ReentrantLock lock = this.lock;
-		int oldPutIndex = putIndex;
-		int newPutIndex = inc(putIndex);
+		final PaddedIndex putIndex = this.putIndex;
+		long oldPutIndex = putIndex.get();
 
-		/* while loop to check whether the queue is full or not. */
+		/*
+		 * check whether the queue is full or not. takeIndex is read only if
+		 * our copy of it says so.
+		 */
 
-		while (newPutIndex == takeIndex) {
+		if (oldPutIndex - putIndex.cache == capacity
+				&& oldPutIndex - (putIndex.cache = takeIndex.get()) == capacity) {
 
 			/*
-			 * If queue has been found full, we acquire the lock and check
-			 * again. It is possible that queue is full before we acquire the
-			 * lock but not full after we acquire.
+			 * If queue has been found full, we wait until it is not, and
+			 * catch up with takeIndex. Same as in take().
 			 */
 
-			lock.lock();
-			try {
-				if (newPutIndex == takeIndex) {
-					cond.await();
-				}
-
-				/*
-				 * else, we release the lock and check again. It is possible
-				 * that queue is not full before we release the lock and becomes
-				 * full after we release the lock.
-				 */
-
-			} finally {
-				lock.unlock();
-			}
+			waitStrategy.await(notFull);
+			putIndex.cache = takeIndex.get();
 		}
 
-		items[putIndex] = e;
-		putIndex = newPutIndex;
+		items[(int) oldPutIndex & mask] = e;
+		putIndex.set(oldPutIndex + 1);
 
-		/*
-		 * If the queue was empty, the consumer must be blocked if there is one.
-		 */
+		/* The consumer may be waiting for the item. Same as in take(). */
 
-		if (oldPutIndex == takeIndex) {
-			lock.lock();
-			try {
-
-				/*
-				 * No need to check again, because there could be no more than
-				 * two threads, with one being the producer ourselves. If queue
-				 * was empty, the consumer must be blocked if there is one.
-				 * Thus, the state of putIndex and takeIndex will not change
-				 * after we acquire the lock.
-				 */
-
-				cond.signal();
-			} finally {
-				lock.unlock();
-			}
-		}
+		waitStrategy.signal();
+		completePoll();
 	}
 
 	@Override
@@ -209,27 +247,38 @@ public class ArrayQuickBlockingQueue<E> extends AbstractQueue<E> implements
 
 	/*
 	 * instant remove item if possible; otherwise null is returned. No lock is
-	 * involved.
+	 * involved, unless the producer is blocked.
 	 */
 
 	@Override
 	public E poll() {
 
-		int index = this.putIndex;
-		if (index != takeIndex) {
+		final PaddedIndex takeIndex = this.takeIndex;
+		long index = takeIndex.get();
+
+		if (index == takeIndex.cache) {
 
-			/* order has to be maintained. */
+			/* looks empty, refresh the copy from putIndex and check again. */
 
-			E e = items[takeIndex];
-			takeIndex = inc(takeIndex);
-			return e;
+			takeIndex.cache = putIndex.get();
+			if (index == takeIndex.cache) {
+				return null;
+			}
 		}
-		return null;
+
+		/* order has to be maintained. */
+
+		E e = items[(int) index & mask];
+		takeIndex.set(index + 1);
+		waitStrategy.signal();
+		completeOffer();
+
+		return e;
 	}
 
 	/*
 	 * instant add item if possible; otherwise false is returned. No lock is
-	 * used.
+	 * used, unless the consumer is blocked.
 	 */
 
 	@Override
@@ -239,176 +288,292 @@ public class ArrayQuickBlockingQueue<E> extends AbstractQueue<E> implements
 			throw new NullPointerException();
 		}
 
-		int index = this.takeIndex;
-		if (inc(putIndex) != index) {
+		final PaddedIndex putIndex = this.putIndex;
+		long index = putIndex.get();
 
-			/* order has to be maintained. */
+		if (index - putIndex.cache == capacity) {
 
-			items[putIndex] = e;
-			putIndex = inc(putIndex);
+			/* looks full, refresh the copy from takeIndex and check again. */
 
-			return true;
+			putIndex.cache = takeIndex.get();
+			if (index - putIndex.cache == capacity) {
+				return false;
+			}
 		}
 
-		return false;
+		/* order has to be maintained. */
+
+		items[(int) index & mask] = e;
+		putIndex.set(index + 1);
+		waitStrategy.signal();
+		completePoll();
+
+		return true;
 	}
 
 	@Override
 	public int drainTo(Collection<? super E> c) {
-		throw new UnsupportedOperationException();
+		return drainTo(c, Integer.MAX_VALUE);
 	}
 
-	@Override
-	public int drainTo(Collection<? super E> c, int maxElements) {
-		throw new UnsupportedOperationException();
-	}
+	/*
+	 * Bulk remove. The available items are a contiguous run of slots from
+	 * takeIndex, which is updated once at the end, and a blocked producer is
+	 * signalled at most once.
+	 */
 
 	@Override
-	public boolean offer(E e, long timeout, TimeUnit unit)
-			throws InterruptedException {
+	public int drainTo(Collection<? super E> c, int maxElements) {
 
-		if (e == null) {
+		if (c == null) {
 			throw new NullPointerException();
 		}
 
-		final ReentrantLock lock = this.lock;
-		int oldPutIndex = putIndex;
-		int newPutIndex = inc(putIndex);
-		long nanos = unit.toNanos(timeout);
+		if (c == this) {
+			throw new IllegalArgumentException();
+		}
 
-		/* while loop to check whether the queue is full or not. */
+		if (maxElements <= 0) {
+			return 0;
+		}
+
+		final PaddedIndex takeIndex = this.takeIndex;
+		long oldTakeIndex = takeIndex.get();
 
-		while (newPutIndex == takeIndex) {
+		takeIndex.cache = putIndex.get();
+		int n = (int) Math.min(takeIndex.cache - oldTakeIndex, maxElements);
+		int i = 0;
+
+		try {
 
 			/*
-			 * If queue has been found full, we acquire the lock and check
-			 * again. It is possible that queue is full before we acquire the
-			 * lock but not full after we acquire.
+			 * An item that c refuses stays in the queue, the ones before it
+			 * are still removed.
 			 */
 
-			lock.lockInterruptibly();
-			try {
-				if (newPutIndex == takeIndex) {
+			while (i < n) {
+				c.add(items[(int) (oldTakeIndex + i) & mask]);
+				++i;
+			}
 
-					if (nanos <= 0) {
-						return false;
-					}
+		} finally {
 
-					nanos = cond.awaitNanos(nanos);
-				}
+			if (i > 0) {
+				takeIndex.set(oldTakeIndex + i);
 
-				/*
-				 * else, we release the lock and check again. It is possible
-				 * that queue is not full before we release the lock and becomes
-				 * full after we release the lock.
-				 */
+				/* The producer may be waiting. Same as in take(). */
 
-			} finally {
-				lock.unlock();
+				waitStrategy.signal();
+				completeOffer();
 			}
 		}
 
-		items[putIndex] = e;
-		putIndex = newPutIndex;
+		return n;
+	}
 
-		/*
-		 * If the queue was empty, the consumer must be blocked if there is one.
-		 */
+	@Override
+	public boolean offer(E e, long timeout, TimeUnit unit)
+			throws InterruptedException {
+
+		if (e == null) {
+			throw new NullPointerException();
+		}
 
-		if (oldPutIndex == takeIndex) {
-			lock.lock();
-			try {
-
-				/*
-				 * No need to check again, because there could be no more than
-				 * two threads, with one being the producer ourselves. If queue
-				 * was empty, the consumer must be blocked if there is one.
-				 * Thus, the state of putIndex and takeIndex will not change
-				 * after we acquire the lock.
-				 */
-
-				cond.signal();
-			} finally {
-				lock.unlock();
+		final PaddedIndex putIndex = this.putIndex;
+		long oldPutIndex = putIndex.get();
+
+		/* same as put(), except that the wait may time out */
+
+		if (oldPutIndex - putIndex.cache == capacity
+				&& oldPutIndex - (putIndex.cache = takeIndex.get()) == capacity) {
+
+			if (!waitStrategy.await(notFull, unit.toNanos(timeout))) {
+				return false;
 			}
+			putIndex.cache = takeIndex.get();
 		}
 
+		items[(int) oldPutIndex & mask] = e;
+		putIndex.set(oldPutIndex + 1);
+		waitStrategy.signal();
+		completePoll();
+
 		return true;
 	}
 
 	@Override
 	public E poll(long timeout, TimeUnit unit) throws InterruptedException {
 
-		long nanos = unit.toNanos(timeout);
+		final PaddedIndex takeIndex = this.takeIndex;
+		long oldTakeIndex = takeIndex.get();
 
-		final ReentrantLock lock = this.lock;
+		/* same as take(), except that the wait may time out */
 
-		int oldTakeIndex = takeIndex;
+		if (oldTakeIndex == takeIndex.cache
+				&& oldTakeIndex == (takeIndex.cache = putIndex.get())) {
 
-		/* while loop to check whether the queue is empty or not. */
+			if (!waitStrategy.await(notEmpty, unit.toNanos(timeout))) {
+				return null;
+			}
+			takeIndex.cache = putIndex.get();
+		}
 
-		while (oldTakeIndex == putIndex) {
+		E e = items[(int) oldTakeIndex & mask];
+		takeIndex.set(oldTakeIndex + 1);
+		waitStrategy.signal();
+		completeOffer();
 
-			/*
-			 * If queue has been found empty, we acquire the lock and check
-			 * again. It is possible that queue is empty before we acquire the
-			 * lock but not empty after we acquire.
-			 */
+		return e;
+	}
 
-			lock.lockInterruptibly();
-			try {
-				if (oldTakeIndex == putIndex) {
+	/*
+	 * Bulk take. Waits until an item is available, then until max items are,
+	 * for linger at most, and removes up to max items into dst, starting at
+	 * off. Returns the number of items removed, at least 1 unless max is 0.
+	 * takeIndex is published once for the whole batch.
+	 */
 
-					if (nanos <= 0) {
-						return null;
-					}
+	public int takeBatch(E[] dst, int off, int max, long linger, TimeUnit unit)
+			throws InterruptedException {
+
+		if (off < 0 || max < 0 || max > dst.length - off) {
+			throw new IndexOutOfBoundsException();
+		}
 
-					nanos = cond.awaitNanos(nanos);
-				}
+		if (max == 0) {
+			return 0;
+		}
 
-				/*
-				 * else, we release the lock and check again. It is possible
-				 * that queue is not empty before we release the lock and
-				 * becomes empty after we release the lock.
-				 */
+		final PaddedIndex takeIndex = this.takeIndex;
+		final long index = takeIndex.get();
 
-			} finally {
+		/* same as take() */
 
-				lock.unlock();
-			}
+		if (index == takeIndex.cache
+				&& index == (takeIndex.cache = putIndex.get())) {
+			waitStrategy.await(notEmpty);
+			takeIndex.cache = putIndex.get();
 		}
 
-		E e = items[oldTakeIndex];
-		takeIndex = inc(oldTakeIndex);
+		/*
+		 * Linger for the rest of the batch. Nothing is removed before the
+		 * batch is taken, so an interrupt loses no item.
+		 */
+
+		final int batch = Math.min(max, capacity);
+
+		if (takeIndex.cache - index < batch) {
+			waitStrategy.await(() -> putIndex.get() - index >= batch,
+					unit.toNanos(linger));
+			takeIndex.cache = putIndex.get();
+		}
+
+		int n = (int) Math.min(takeIndex.cache - index, max);
+
+		/* the batch may wrap around the end of the array */
+
+		int start = (int) index & mask;
+		int first = Math.min(n, capacity - start);
+		System.arraycopy(items, start, dst, off, first);
+		System.arraycopy(items, 0, dst, off + first, n - first);
+
+		takeIndex.set(index + n);
+		waitStrategy.signal();
+		completeOffer();
+
+		return n;
+	}
+
+	/*
+	 * Adds the item without blocking. The future is complete on return if
+	 * there is room; otherwise it is completed by the consumer once it makes
+	 * room, and until then the producer must not add anything else.
+	 */
+
+	public CompletableFuture<Void> offerAsync(E e) {
+
+		if (offer(e)) {
+			return CompletableFuture.completedFuture(null);
+		}
+
+		final PendingOffer<E> pending = new PendingOffer<E>(e);
+		pendingOffer.set(pending);
 
 		/*
-		 * If the queue was full, the producer must be blocked if there is one.
+		 * The consumer may have made room before it could see the future.
+		 * Whoever takes the future out completes it.
 		 */
 
-		if (inc(putIndex) == oldTakeIndex) {
-			lock.lock();
+		if (notFull.getAsBoolean()
+				&& pendingOffer.compareAndSet(pending, null)) {
+			offer(pending.item);
+			pending.complete(null);
+		}
 
-			/*
-			 * No need to check again, because there could be no more than two
-			 * threads, with one being the consumer ourselves. If queue was
-			 * full, the producer must be blocked if there is one. Thus, the
-			 * state of putIndex and takeIndex will not change after we acquire
-			 * the lock.
-			 */
+		return pending;
+	}
 
-			try {
-				cond.signal();
-			} finally {
-				lock.unlock();
-			}
+	/*
+	 * Removes an item without blocking. The future is complete on return if
+	 * the queue is not empty; otherwise it is completed by the producer once it
+	 * adds an item, and until then the consumer must not remove anything else.
+	 */
+
+	public CompletableFuture<E> pollAsync() {
+
+		E e = poll();
+		if (e != null) {
+			return CompletableFuture.completedFuture(e);
 		}
 
-		return e;
+		final CompletableFuture<E> pending = new CompletableFuture<E>();
+		pendingPoll.set(pending);
+
+		/* same as offerAsync() */
+
+		if (notEmpty.getAsBoolean()
+				&& pendingPoll.compareAndSet(pending, null)) {
+			pending.complete(poll());
+		}
+
+		return pending;
+	}
+
+	/*
+	 * Called by the consumer after it has made room. The item of a pending
+	 * offerAsync() is added on the producer's behalf, which cannot fail: once
+	 * the future is taken out, nobody else adds.
+	 */
+
+	private void completeOffer() {
+
+		final PendingOffer<E> pending = pendingOffer.get();
+
+		if (pending != null && notFull.getAsBoolean()
+				&& pendingOffer.compareAndSet(pending, null)) {
+			offer(pending.item);
+			pending.complete(null);
+		}
+	}
+
+	/*
+	 * Called by the producer after it has added an item. Same as
+	 * completeOffer().
+	 */
+
+	private void completePoll() {
+
+		final CompletableFuture<E> pending = pendingPoll.get();
+
+		if (pending != null && notEmpty.getAsBoolean()
+				&& pendingPoll.compareAndSet(pending, null)) {
+			pending.complete(poll());
+		}
 	}
 
 	@Override
 	public int remainingCapacity() {
-		return size - size();
+		return capacity - size();
 	}
 
 	@Override
@@ -418,7 +583,11 @@ public class ArrayQuickBlockingQueue<E> extends AbstractQueue<E> implements
 
 	@Override
 	public int size() {
-		return (putIndex + size - takeIndex) % size;
+
+		/* same as ArrayQuickQueue.size() */
+
+		long take = takeIndex.get();
+		return (int) Math.min(putIndex.get() - take, capacity);
 	}
 
 }
@@ -3,6 +3,8 @@ package queue;
 import java.util.AbstractQueue;
 import java.util.Iterator;
 import java.util.Queue;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
 
 /* A single-producer-single-consumer bounded queue. 
  * 
@@ -15,15 +17,36 @@ import java.util.Queue;
  * No lock or CAS is used.
  * 
  * Two indexes, putIndex and takeIndex are used to track the positions of producer 
- * and consumer. Both indexes are defined as "volatile int", which is the key to 
- * implement the concurrency without using lock or CAS.
+ * and consumer. Both indexes are volatile, which is the key to implement the 
+ * concurrency without using lock or CAS.
  * 
- * If putIndex == takeIndex, the queue is empty. If putIndex + 1 == takeIndex, the 
- * queue is full. Either index reaches the end of the queue, the index is wrapped 
- * around to the beginning of the queue. 
+ * The indexes are 64-bit sequences that only grow, and never wrap in practice. The 
+ * capacity is the size given to the constructor rounded up to a power of 2, so an 
+ * index maps onto the array with "index & mask", without a branch. If 
+ * putIndex == takeIndex, the queue is empty. If putIndex - takeIndex == capacity, 
+ * the queue is full, so every slot of the array is used. size() is simply 
+ * putIndex - takeIndex.
  * 
- * The size of the queue can be optimized at the order of 2 to improve the speed of 
- * index increment.
+ * The producer keeps a private copy of takeIndex, and the consumer keeps a private 
+ * copy of putIndex. A stale copy can only make the queue look fuller to the producer 
+ * or emptier to the consumer, so the volatile index of the other side is read only 
+ * when the copy says the queue is full or empty. In the common case, producer and 
+ * consumer do not touch each other's index at all.
+ * 
+ * Each index, together with its owner's copy of the other index, is held in a 
+ * PaddedIndex of its own, so that producer fields, consumer fields and the read-only 
+ * fields of the queue sit on separate cache lines. 
+ * 
+ * Each index has a single writer, so it is published with an ordered store 
+ * (lazySet, the release store of the JDK 9 VarHandle API) rather than a volatile 
+ * store. The item written before the store is still visible to whoever sees the new 
+ * index, but the writer does not wait for its store buffer to drain, which on x86 
+ * removes the StoreLoad fence from every offer and poll. Index reads stay volatile, 
+ * which is an acquire load and costs nothing extra.
+ * 
+ * Bulk operations, offer(E[], int, int), poll(E[], int, int), drain() and fill(), 
+ * move a batch of items with a single read of the other side's index at most and a 
+ * single publication of their own index, rather than one per item. 
  * 
  * peek() and iterator() are not supported at this point.
  *
@@ -37,28 +60,34 @@ import java.util.Queue;
 
 public class ArrayQuickQueue<E> extends AbstractQueue<E> implements Queue<E> {
 
-	/* number of items queued */
-	private final int size;
+	/* maximum number of items queued, a power of 2 */
+	private final int capacity;
+
+	/* capacity - 1, maps an index onto items */
+	private final int mask;
 
 	/* queued items */
 	private final E[] items;
 
-	/* item index for next poll and remove */
-	private volatile int takeIndex;
+	/*
+	 * item index for next poll and remove, with the consumer's copy of
+	 * putIndex in takeIndex.cache
+	 */
+	private final PaddedIndex takeIndex;
 
-	/* item index for next offer and add */
-	private volatile int putIndex;
-
-	/* index increment */
-	private int inc(int pos) {
-		return (++pos == size) ? 0 : pos;
-	}
+	/*
+	 * item index for next offer and add, with the producer's copy of
+	 * takeIndex in putIndex.cache
+	 */
+	private final PaddedIndex putIndex;
 
+	/* size is rounded up to a power of 2 */
 	public ArrayQuickQueue(int size) {
-		this.size = size;
-		this.items = (E[]) (new Object[size]);
-		this.takeIndex = 0;
-		this.putIndex = 0;
+		this.capacity = Pow2.roundToPowerOfTwo(size);
+		this.mask = capacity - 1;
+		this.items = (E[]) (new Object[capacity]);
+		this.takeIndex = new PaddedIndex(0);
+		this.putIndex = new PaddedIndex(0);
 	}
 
 	@Override
@@ -68,18 +97,25 @@ public class ArrayQuickQueue<E> extends AbstractQueue<E> implements Queue<E> {
 			throw new NullPointerException();
 		}
 
-		int index = this.takeIndex;
-		if (inc(putIndex) != index) {
+		final PaddedIndex putIndex = this.putIndex;
+		long index = putIndex.get();
 
-			/* order has to be maintained. */
+		if (index - putIndex.cache == capacity) {
 
-			items[putIndex] = e;
-			putIndex = inc(putIndex);
+			/* looks full, refresh the copy from takeIndex and check again. */
 
-			return true;
+			putIndex.cache = takeIndex.get();
+			if (index - putIndex.cache == capacity) {
+				return false;
+			}
 		}
 
-		return false;
+		/* order has to be maintained. */
+
+		items[(int) index & mask] = e;
+		putIndex.lazySet(index + 1);
+
+		return true;
 	}
 
 	@Override
@@ -89,17 +125,192 @@ public class ArrayQuickQueue<E> extends AbstractQueue<E> implements Queue<E> {
 
 	@Override
 	public E poll() {
-		int index = this.putIndex;
-		if (index != takeIndex) {
+		final PaddedIndex takeIndex = this.takeIndex;
+		long index = takeIndex.get();
+
+		if (index == takeIndex.cache) {
+
+			/* looks empty, refresh the copy from putIndex and check again. */
+
+			takeIndex.cache = putIndex.get();
+			if (index == takeIndex.cache) {
+				return null;
+			}
+		}
+
+		/* order has to be maintained. */
+
+		E e = items[(int) index & mask];
+		takeIndex.lazySet(index + 1);
+
+		return e;
+	}
+
+	/*
+	 * Adds up to len items of src, starting at off, and returns the number of
+	 * items added, which is less than len if the queue fills up. putIndex is
+	 * published once for the whole batch.
+	 */
 
-			/* order has to be maintained. */
+	public int offer(E[] src, int off, int len) {
 
-			E e = items[takeIndex];
-			takeIndex = inc(takeIndex);
+		if (off < 0 || len < 0 || len > src.length - off) {
+			throw new IndexOutOfBoundsException();
+		}
+
+		final PaddedIndex putIndex = this.putIndex;
+		long index = putIndex.get();
+		int n = free(index, len);
 
-			return e;
+		for (int i = 0; i < n; ++i) {
+			if (src[off + i] == null) {
+				throw new NullPointerException();
+			}
 		}
-		return null;
+
+		/* the batch may wrap around the end of the array */
+
+		int start = (int) index & mask;
+		int first = Math.min(n, capacity - start);
+		System.arraycopy(src, off, items, start, first);
+		System.arraycopy(src, off + first, items, 0, n - first);
+
+		putIndex.lazySet(index + n);
+
+		return n;
+	}
+
+	/*
+	 * Removes up to max items into dst, starting at off, and returns the
+	 * number of items removed. takeIndex is published once for the whole
+	 * batch.
+	 */
+
+	public int poll(E[] dst, int off, int max) {
+
+		if (off < 0 || max < 0 || max > dst.length - off) {
+			throw new IndexOutOfBoundsException();
+		}
+
+		final PaddedIndex takeIndex = this.takeIndex;
+		long index = takeIndex.get();
+		int n = available(index, max);
+
+		/* the batch may wrap around the end of the array */
+
+		int start = (int) index & mask;
+		int first = Math.min(n, capacity - start);
+		System.arraycopy(items, start, dst, off, first);
+		System.arraycopy(items, 0, dst, off + first, n - first);
+
+		takeIndex.lazySet(index + n);
+
+		return n;
+	}
+
+	/*
+	 * Hands up to limit items to consumer, in order, and returns the number of
+	 * items handed over. takeIndex is published once, after the last item.
+	 * 
+	 * If consumer throws, the item it was given counts as removed, and the
+	 * items before it are published before the exception propagates.
+	 */
+
+	public int drain(Consumer<? super E> consumer, int limit) {
+
+		if (limit < 0) {
+			throw new IllegalArgumentException();
+		}
+
+		final PaddedIndex takeIndex = this.takeIndex;
+		long index = takeIndex.get();
+		int n = available(index, limit);
+		int i = 0;
+
+		try {
+			while (i < n) {
+				E e = items[(int) (index + i) & mask];
+				++i;
+				consumer.accept(e);
+			}
+		} finally {
+			takeIndex.lazySet(index + i);
+		}
+
+		return n;
+	}
+
+	/*
+	 * Adds up to limit items obtained from supplier, and returns the number of
+	 * items added, which is less than limit if the queue fills up. supplier is
+	 * not called when there is no room. putIndex is published once, after the
+	 * last item.
+	 * 
+	 * If supplier throws or returns null, the items before it are published
+	 * before the exception propagates.
+	 */
+
+	public int fill(Supplier<? extends E> supplier, int limit) {
+
+		if (limit < 0) {
+			throw new IllegalArgumentException();
+		}
+
+		final PaddedIndex putIndex = this.putIndex;
+		long index = putIndex.get();
+		int n = free(index, limit);
+		int i = 0;
+
+		try {
+			while (i < n) {
+				E e = supplier.get();
+				if (e == null) {
+					throw new NullPointerException();
+				}
+				items[(int) (index + i) & mask] = e;
+				++i;
+			}
+		} finally {
+			putIndex.lazySet(index + i);
+		}
+
+		return n;
+	}
+
+	/*
+	 * Producer only: number of free slots after index, up to max. takeIndex is
+	 * read only if the copy of it cannot grant max.
+	 */
+
+	private int free(long index, int max) {
+
+		final PaddedIndex putIndex = this.putIndex;
+		long free = capacity - (index - putIndex.cache);
+
+		if (free < max) {
+			putIndex.cache = takeIndex.get();
+			free = capacity - (index - putIndex.cache);
+		}
+
+		return (int) Math.min(free, max);
+	}
+
+	/*
+	 * Consumer only: number of items queued from index, up to max. putIndex is
+	 * read only if the copy of it cannot grant max.
+	 */
+
+	private int available(long index, int max) {
+
+		final PaddedIndex takeIndex = this.takeIndex;
+		long available = takeIndex.cache - index;
+
+		if (available < max) {
+			takeIndex.cache = putIndex.get();
+			available = takeIndex.cache - index;
+		}
+
+		return (int) Math.min(available, max);
 	}
 
 	@Override
@@ -109,7 +320,15 @@ public class ArrayQuickQueue<E> extends AbstractQueue<E> implements Queue<E> {
 
 	@Override
 	public int size() {
-		return (putIndex + size - takeIndex) % size;
+
+		/*
+		 * takeIndex is read first, so that the difference cannot be negative.
+		 * The consumer may move on before putIndex is read, so the difference
+		 * is capped at the capacity.
+		 */
+
+		long take = takeIndex.get();
+		return (int) Math.min(putIndex.get() - take, capacity);
 	}
 
 }
\ No newline at end of file
@@ -0,0 +1,63 @@
+package queue;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/*
+ * Spins, then yields, then parks for a time that doubles from minPark up to
+ * maxPark between two checks. Costs next to nothing while the queue stays
+ * empty or full for long, at the price of up to maxPark of latency. Nobody has
+ * to unpark the waiting thread, so signal() stays free.
+ *
+ * */
+
+public final class BackoffWaitStrategy extends SpinWaitStrategy {
+
+	/* number of checks before yielding */
+	static final int SPINS = 100;
+
+	/* number of checks before parking */
+	static final int YIELDS = SPINS + 10;
+
+	private final long minParkNanos;
+
+	private final long maxParkNanos;
+
+	/* parks from 1 microsecond up to 1 millisecond */
+	public BackoffWaitStrategy() {
+		this(1, 1000, TimeUnit.MICROSECONDS);
+	}
+
+	public BackoffWaitStrategy(long minPark, long maxPark, TimeUnit unit) {
+
+		if (minPark <= 0 || maxPark < minPark) {
+			throw new IllegalArgumentException();
+		}
+
+		this.minParkNanos = unit.toNanos(minPark);
+		this.maxParkNanos = unit.toNanos(maxPark);
+	}
+
+	@Override
+	void idle(int n, long nanos) {
+
+		if (n < SPINS) {
+			return;
+		}
+
+		if (n < YIELDS) {
+			Thread.yield();
+			return;
+		}
+
+		/* minPark doubled for every park so far, up to maxPark */
+
+		int parks = Math.min(n - YIELDS, 62);
+		long park = minParkNanos << parks;
+		if (park >>> parks != minParkNanos || park > maxParkNanos) {
+			park = maxParkNanos;
+		}
+
+		LockSupport.parkNanos(Math.min(park, nanos));
+	}
+}
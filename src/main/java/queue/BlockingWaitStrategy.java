@@ -0,0 +1,131 @@
+package queue;
+
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BooleanSupplier;
+
+/*
+ * Blocks on a lock and a condition, the way ArrayQuickBlockingQueue has always
+ * waited. The check is done again under the lock, and signal() takes the lock,
+ * so a signal cannot fall between the check and the wait.
+ *
+ * signal() takes the lock only if a thread is waiting. A waiting thread counts
+ * itself in under the lock, before the check, and signal() reads the count
+ * without it. So when neither side has to wait, signal() is a read of a field
+ * that does not change, and the lock is never touched.
+ *
+ * signal() wakes every waiter up and sets the count back to 0, so that the changes
+ * made before they are running again do not take the lock either. A waiter that
+ * has to wait again counts itself in again before checking again. The generation
+ * tells a waiter whether a signal has taken it out of the count meanwhile, so
+ * that on its way out it only takes out itself.
+ *
+ * */
+
+public final class BlockingWaitStrategy implements WaitStrategy {
+
+	/* used for notification */
+	private final ReentrantLock lock = new ReentrantLock();
+
+	/* used for notification */
+	private final Condition cond = lock.newCondition();
+
+	/* number of threads waiting and not yet signalled, written under lock */
+	private volatile int waiters;
+
+	/* number of signals that woke waiters up, guarded by lock */
+	private int generation;
+
+	@Override
+	public void await(BooleanSupplier ready) throws InterruptedException {
+
+		final ReentrantLock lock = this.lock;
+		lock.lockInterruptibly();
+
+		boolean counted = false;
+		int generation = 0;
+
+		try {
+			while (true) {
+
+				/* counted in before the check, see WaitStrategy */
+
+				if (!counted || generation != this.generation) {
+					++waiters;
+					counted = true;
+					generation = this.generation;
+				}
+
+				if (ready.getAsBoolean()) {
+					return;
+				}
+
+				cond.await();
+			}
+		} finally {
+			if (counted && generation == this.generation) {
+				--waiters;
+			}
+			lock.unlock();
+		}
+	}
+
+	@Override
+	public boolean await(BooleanSupplier ready, long nanos)
+			throws InterruptedException {
+
+		final ReentrantLock lock = this.lock;
+		lock.lockInterruptibly();
+
+		boolean counted = false;
+		int generation = 0;
+
+		try {
+			while (true) {
+
+				/* counted in before the check, see WaitStrategy */
+
+				if (!counted || generation != this.generation) {
+					++waiters;
+					counted = true;
+					generation = this.generation;
+				}
+
+				if (ready.getAsBoolean()) {
+					return true;
+				}
+
+				if (nanos <= 0) {
+					return false;
+				}
+
+				nanos = cond.awaitNanos(nanos);
+			}
+		} finally {
+			if (counted && generation == this.generation) {
+				--waiters;
+			}
+			lock.unlock();
+		}
+	}
+
+	@Override
+	public void signal() {
+
+		if (waiters == 0) {
+			return;
+		}
+
+		final ReentrantLock lock = this.lock;
+		lock.lock();
+		try {
+			if (waiters != 0) {
+				waiters = 0;
+				++generation;
+				cond.signalAll();
+			}
+		} finally {
+			lock.unlock();
+		}
+	}
+}
@@ -0,0 +1,14 @@
+package queue;
+
+/*
+ * Checks in a tight loop. The lowest latency, for a thread that has a core of
+ * its own; any other thread on that core is starved while it waits.
+ *
+ * */
+
+public final class BusySpinWaitStrategy extends SpinWaitStrategy {
+
+	@Override
+	void idle(int n, long nanos) {
+	}
+}
@@ -0,0 +1,335 @@
+package queue;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/* A single-producer-single-consumer bounded queue of variable-length messages,
+ * held off the heap in a direct ByteBuffer.
+ *
+ * == implementation ==
+ *
+ * The buffer is a header followed by a ring of bytes whose capacity is a power of 2.
+ *
+ * The header holds putIndex and takeIndex, each on a cache line of its own together
+ * with its owner's copy of the other index, the same way PaddedIndex does on the
+ * heap. The indexes are 64-bit byte sequences that only grow, so the protocol is the
+ * one of ArrayQuickQueue: the queue is empty when putIndex == takeIndex, the copy of
+ * the other side's index is refreshed only when the ring looks full or empty, and
+ * each index is published with an ordered store (putOrderedLong, the off-heap
+ * lazySet), which makes the bytes written before it visible to the other side.
+ * Only the loads and stores of the other side's index go through UnsafeAccess;
+ * everything else is a plain absolute get or put of a ByteBuffer.
+ *
+ * A message is stored as a record: an 8-byte header holding the length of the
+ * message, followed by the message, padded to a multiple of 8 bytes so that the
+ * next record header and every message start 8-byte aligned. A record is never
+ * split at the end of the ring. When it does not fit in what is left before the end,
+ * the rest of the ring is filled with a padding record, whose header holds the
+ * negated length of the padding, and the record is written at the start.
+ *
+ * The producer claims room for a message, writes it straight into the ring and
+ * commits it:
+ *
+ *     int offset = queue.claim(length);
+ *     if (offset >= 0) {
+ *         queue.buffer().putLong(offset, ...);
+ *         ...
+ *         queue.commit();
+ *     }
+ *
+ * A claim that is not committed is dropped by the next claim. offer() does all
+ * three for a byte[].
+ *
+ * The consumer reads messages in place: read() hands each one to a MessageHandler as
+ * an offset and a length into a buffer, with no copy. The bytes stay valid until
+ * read() returns; takeIndex is published once, after the last message of the call,
+ * so the producer cannot reuse them before.
+ *
+ * The buffers given to the producer and to the handler are views of the ring; only
+ * the absolute get and put methods should be used on them.
+ *
+ * */
+
+public class ByteBufferQuickQueue {
+
+	/* size of a cache line */
+	static final int LINE = 64;
+
+	/* header offsets of the producer fields */
+	static final int PUT_INDEX = 0;
+	static final int PUT_CACHE = 8;
+	static final int PUT_CLAIM = 16;
+
+	/* header offsets of the consumer fields */
+	static final int TAKE_INDEX = LINE;
+	static final int TAKE_CACHE = LINE + 8;
+
+	/*
+	 * the third line keeps the consumer fields away from the ring, and holds
+	 * the file fields of MappedQuickQueue
+	 */
+	static final int HEADER_LENGTH = 3 * LINE;
+
+	/* length of a record header, and alignment of records */
+	static final int RECORD_HEADER = 8;
+
+	/* smallest ring */
+	static final int MIN_CAPACITY = LINE;
+
+	/* a message receiver */
+	public interface MessageHandler {
+
+		/* the message is buffer[offset, offset + length) */
+		void onMessage(ByteBuffer buffer, int offset, int length);
+	}
+
+	/* size of the ring in bytes, a power of 2 */
+	private final int capacity;
+
+	/* capacity - 1, maps an index onto the ring */
+	private final int mask;
+
+	/* longest message, so that a claim never needs more than the ring */
+	private final int maxMessageLength;
+
+	/* address of the header */
+	private final long address;
+
+	/* the header */
+	private final ByteBuffer header;
+
+	/* the ring, for the producer */
+	private final ByteBuffer buffer;
+
+	/* the ring, for the producer to copy messages into */
+	private final ByteBuffer writeBuffer;
+
+	/* the ring, for the consumer */
+	private final ByteBuffer readBuffer;
+
+	/*
+	 * size is rounded up to a power of 2, and to MIN_CAPACITY. The longest
+	 * message is an eighth of it.
+	 */
+	public ByteBufferQuickQueue(int size) {
+		this(allocate(ringCapacity(size)));
+	}
+
+	/*
+	 * region is a direct buffer, aligned to LINE, of HEADER_LENGTH plus a
+	 * power of 2 bytes. The header is used as it is, so it has to be zeroed or
+	 * left by an earlier queue over the same region.
+	 */
+	ByteBufferQuickQueue(ByteBuffer region) {
+
+		int size = region.capacity() - HEADER_LENGTH;
+		if (size < MIN_CAPACITY || Integer.bitCount(size) != 1) {
+			throw new IllegalArgumentException("ring size: " + size);
+		}
+
+		this.address = UnsafeAccess.address(region);
+		if ((address & (LINE - 1)) != 0) {
+			throw new IllegalArgumentException("not aligned to " + LINE);
+		}
+
+		this.capacity = size;
+		this.mask = capacity - 1;
+		this.maxMessageLength = capacity / 8;
+		this.header = slice(region, 0, HEADER_LENGTH);
+		this.buffer = slice(region, HEADER_LENGTH, capacity);
+		this.writeBuffer = slice(region, HEADER_LENGTH, capacity);
+		this.readBuffer = slice(region, HEADER_LENGTH, capacity);
+	}
+
+	/*
+	 * Claims room for a message of the given length and returns the offset in
+	 * buffer() to write it at, or -1 if the ring is full. The message becomes
+	 * visible to the consumer on commit().
+	 */
+
+	public int claim(int length) {
+
+		if (length < 0 || length > maxMessageLength) {
+			throw new IllegalArgumentException("length: " + length);
+		}
+
+		long index = header.getLong(PUT_INDEX);
+		int recordLength = align(RECORD_HEADER + length);
+		int offset = (int) index & mask;
+
+		/* not enough room before the end, the rest of the ring is padded */
+
+		int padding = capacity - offset < recordLength ? capacity - offset : 0;
+		long limit = index + padding + recordLength;
+
+		if (limit - header.getLong(PUT_CACHE) > capacity) {
+
+			/* looks full, refresh the copy from takeIndex and check again. */
+
+			long take = UnsafeAccess.getLongVolatile(address + TAKE_INDEX);
+			header.putLong(PUT_CACHE, take);
+			if (limit - take > capacity) {
+				return -1;
+			}
+		}
+
+		if (padding != 0) {
+			buffer.putInt(offset, -padding);
+			offset = 0;
+		}
+
+		buffer.putInt(offset, length);
+		header.putLong(PUT_CLAIM, limit);
+
+		return offset + RECORD_HEADER;
+	}
+
+	/* publishes the message claimed last */
+
+	public void commit() {
+
+		long limit = header.getLong(PUT_CLAIM);
+		if (limit == header.getLong(PUT_INDEX)) {
+			throw new IllegalStateException("nothing claimed");
+		}
+
+		UnsafeAccess.putOrderedLong(address + PUT_INDEX, limit);
+	}
+
+	/* instant add of src[off, off + len) if possible; otherwise false is returned. */
+
+	public boolean offer(byte[] src, int off, int len) {
+
+		if (off < 0 || len < 0 || len > src.length - off) {
+			throw new IndexOutOfBoundsException();
+		}
+
+		int offset = claim(len);
+		if (offset < 0) {
+			return false;
+		}
+
+		writeBuffer.position(offset);
+		writeBuffer.put(src, off, len);
+		commit();
+
+		return true;
+	}
+
+	/*
+	 * Hands up to limit messages to handler, in place, and returns the number
+	 * of messages read. takeIndex is published once, when the last message has
+	 * been handled. A message whose handler throws counts as read.
+	 */
+
+	public int read(MessageHandler handler, int limit) {
+
+		if (limit < 0) {
+			throw new IllegalArgumentException("limit: " + limit);
+		}
+
+		long start = header.getLong(TAKE_INDEX);
+		long put = header.getLong(TAKE_CACHE);
+
+		if (start == put) {
+
+			/* looks empty, refresh the copy from putIndex and check again. */
+
+			put = UnsafeAccess.getLongVolatile(address + PUT_INDEX);
+			header.putLong(TAKE_CACHE, put);
+		}
+
+		long index = start;
+		int n = 0;
+
+		try {
+			while (n < limit && index != put) {
+
+				int offset = (int) index & mask;
+				int length = readBuffer.getInt(offset);
+
+				if (length < 0) {
+
+					/* padding at the end of the ring */
+
+					index -= length;
+					continue;
+				}
+
+				index += align(RECORD_HEADER + length);
+				++n;
+
+				handler.onMessage(readBuffer, offset + RECORD_HEADER, length);
+			}
+		} finally {
+			if (index != start) {
+				UnsafeAccess.putOrderedLong(address + TAKE_INDEX, index);
+			}
+		}
+
+		return n;
+	}
+
+	public int read(MessageHandler handler) {
+		return read(handler, Integer.MAX_VALUE);
+	}
+
+	/* the ring, for the producer to write claimed messages into */
+	public ByteBuffer buffer() {
+		return buffer;
+	}
+
+	/* size of the ring in bytes */
+	public int capacity() {
+		return capacity;
+	}
+
+	/* longest message that can be claimed */
+	public int maxMessageLength() {
+		return maxMessageLength;
+	}
+
+	public boolean isEmpty() {
+		return UnsafeAccess.getLongVolatile(address + TAKE_INDEX) == UnsafeAccess
+				.getLongVolatile(address + PUT_INDEX);
+	}
+
+	/* bytes taken by queued records, padding included */
+	public int size() {
+
+		/* same as ArrayQuickQueue.size() */
+
+		long take = UnsafeAccess.getLongVolatile(address + TAKE_INDEX);
+		return (int) Math.min(
+				UnsafeAccess.getLongVolatile(address + PUT_INDEX) - take,
+				capacity);
+	}
+
+	static int ringCapacity(int size) {
+		return Pow2.roundToPowerOfTwo(Math.max(size, MIN_CAPACITY));
+	}
+
+	private static int align(int length) {
+		return (length + RECORD_HEADER - 1) & -RECORD_HEADER;
+	}
+
+	/* a zeroed direct region of the header and the ring, aligned to LINE */
+	private static ByteBuffer allocate(int capacity) {
+
+		ByteBuffer buffer = ByteBuffer.allocateDirect(HEADER_LENGTH + capacity
+				+ LINE);
+		int shift = (int) (-UnsafeAccess.address(buffer) & (LINE - 1));
+
+		return slice(buffer, shift, HEADER_LENGTH + capacity);
+	}
+
+	/* buffer[offset, offset + length) in native order */
+	static ByteBuffer slice(ByteBuffer buffer, int offset, int length) {
+
+		ByteBuffer view = buffer.duplicate();
+		view.limit(offset + length);
+		view.position(offset);
+
+		return view.slice().order(ByteOrder.nativeOrder());
+	}
+}
@@ -0,0 +1,209 @@
+package queue;
+
+import java.util.AbstractQueue;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+
+/* A single-producer-single-consumer bounded queue that takes little memory while
+ * it holds few items.
+ *
+ * == implementation ==
+ *
+ * For a mailbox per actor or per session, mostly empty, the memory of an idle
+ * ArrayQuickQueue is the limit: its array of size items, allocated up front, and its
+ * two PaddedIndex, a cache line each and more. CompactArrayQuickQueue is a few dozen
+ * bytes with no array at all until the first offer, and grows an array only as items
+ * pile up. The consumer clears each slot it takes, so the array holds on to no item
+ * once taken.
+ *
+ * putIndex and takeIndex are plain volatile fields of the queue, published with
+ * ordered stores as in ArrayQuickQueue, but neither padded nor cached: the queue
+ * gives up the separate cache lines, and reads the other side's index on every
+ * offer and poll, to stay small.
+ *
+ * The array is a ring of a power of 2 items, followed by one more slot holding the
+ * next ring, so that a ring is a single object. It changes as in
+ * ResizableArrayQuickQueue: the producer writes the item into a new ring, links it,
+ * and leaves JUMP in the slot of the current ring the item would have taken; the
+ * consumer follows JUMP to the next ring.
+ *
+ * The first offer allocates a ring of INITIAL_CAPACITY items, and hands it to the
+ * consumer directly, which is safe as the consumer has no ring to read yet. When a
+ * single free slot is left, the producer doubles the ring, up to maxCapacity. When
+ * the producer finds the queue empty and its ring larger than INITIAL_CAPACITY, it
+ * goes back to a ring of INITIAL_CAPACITY, so that the ring grown by a burst is
+ * garbage once the burst is drained and the next item has come. The cost is a small
+ * array per burst. Until that next item, an idle queue keeps the ring of its last
+ * burst, cleared but at its grown size: only the producer changes rings, and it
+ * does not run while the queue is idle.
+ *
+ * peek() and iterator() are not supported at this point.
+ *
+ * */
+
+public class CompactArrayQuickQueue<E> extends AbstractQueue<E> implements
+		Queue<E> {
+
+	/* marks the slot where the consumer moves on to the next ring */
+	private static final Object JUMP = new Object();
+
+	/* number of items of the first ring */
+	static final int INITIAL_CAPACITY = 2;
+
+	/* CompactArrayQuickQueue.class, typed for the field updaters */
+	@SuppressWarnings("unchecked")
+	private static final Class<CompactArrayQuickQueue<?>> QUEUE = (Class<CompactArrayQuickQueue<?>>) (Class<?>) CompactArrayQuickQueue.class;
+
+	private static final AtomicLongFieldUpdater<CompactArrayQuickQueue<?>> takeIndexUpdater = AtomicLongFieldUpdater
+			.newUpdater(QUEUE, "takeIndex");
+
+	private static final AtomicLongFieldUpdater<CompactArrayQuickQueue<?>> putIndexUpdater = AtomicLongFieldUpdater
+			.newUpdater(QUEUE, "putIndex");
+
+	/* maximum number of items queued, a power of 2 */
+	private final int maxCapacity;
+
+	/* item index for next poll and remove */
+	private volatile long takeIndex;
+
+	/* item index for next offer and add */
+	private volatile long putIndex;
+
+	/* the ring the producer writes to, null until the first offer */
+	private Object[] producerRing;
+
+	/* the ring the consumer reads from, null until the first offer */
+	private Object[] consumerRing;
+
+	/* maxSize is rounded up to a power of 2 */
+	public CompactArrayQuickQueue(int maxSize) {
+		this.maxCapacity = Pow2.roundToPowerOfTwo(maxSize);
+	}
+
+	@Override
+	public boolean offer(E e) {
+
+		if (e == null) {
+			throw new NullPointerException();
+		}
+
+		final Object[] ring = producerRing;
+		long index = putIndex;
+		long size = index - takeIndex;
+
+		if (ring == null) {
+
+			/* the first offer: the consumer has nothing to read yet. */
+
+			Object[] first = new Object[Math.min(INITIAL_CAPACITY, maxCapacity) + 1];
+			first[(int) index & mask(first)] = e;
+			producerRing = first;
+			consumerRing = first;
+			putIndexUpdater.lazySet(this, index + 1);
+
+			return true;
+		}
+
+		int capacity = ring.length - 1;
+
+		if (size == capacity - 1 && capacity < maxCapacity) {
+			resize(ring, index, capacity << 1, e);
+			return true;
+		}
+
+		if (size == 0 && capacity > INITIAL_CAPACITY) {
+			resize(ring, index, INITIAL_CAPACITY, e);
+			return true;
+		}
+
+		if (size == capacity) {
+			return false;
+		}
+
+		/* order has to be maintained. */
+
+		ring[(int) index & mask(ring)] = e;
+		putIndexUpdater.lazySet(this, index + 1);
+
+		return true;
+	}
+
+	@Override
+	public E peek() {
+		throw new UnsupportedOperationException();
+	}
+
+	/* items are stored as Object, next to JUMP */
+
+	@Override
+	@SuppressWarnings("unchecked")
+	public E poll() {
+
+		long index = takeIndex;
+
+		if (index == putIndex) {
+			return null;
+		}
+
+		Object[] ring = consumerRing;
+		int slot = (int) index & mask(ring);
+		Object e = ring[slot];
+
+		if (e == JUMP) {
+			consumerRing = ring = (Object[]) ring[ring.length - 1];
+			slot = (int) index & mask(ring);
+			e = ring[slot];
+		}
+
+		/* order has to be maintained. */
+
+		ring[slot] = null;
+		takeIndexUpdater.lazySet(this, index + 1);
+
+		return (E) e;
+	}
+
+	@Override
+	public Iterator<E> iterator() {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public int size() {
+
+		/* same as ArrayQuickQueue.size() */
+
+		long take = takeIndex;
+		return (int) Math.min(putIndex - take, maxCapacity);
+	}
+
+	/* number of items the producer's ring holds, as last seen, 0 if none yet */
+	public int capacity() {
+		Object[] ring = producerRing;
+		return ring == null ? 0 : ring.length - 1;
+	}
+
+	/* maps an index onto the items of ring, leaving out the link slot */
+	private static int mask(Object[] ring) {
+		return ring.length - 2;
+	}
+
+	/*
+	 * The producer: moves on to a new ring of the given capacity, with e at
+	 * index, and leaves JUMP behind in the current one.
+	 */
+
+	private void resize(Object[] ring, long index, int capacity, E e) {
+
+		Object[] next = new Object[capacity + 1];
+		next[(int) index & mask(next)] = e;
+		ring[ring.length - 1] = next;
+		producerRing = next;
+
+		/* order has to be maintained. */
+
+		ring[(int) index & mask(ring)] = JUMP;
+		putIndexUpdater.lazySet(this, index + 1);
+	}
+}
@@ -0,0 +1,283 @@
+package queue;
+
+import java.util.Collection;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/* A multiple-producer-multiple-consumer bounded blocking queue.
+ *
+ * == implementation ==
+ *
+ * ConcurrentArrayBlockingQueue is to ConcurrentArrayQueue what ArrayQuickBlockingQueue
+ * is to ArrayQuickQueue. Items are added and removed with the CAS of
+ * ConcurrentArrayQueue, and no lock is taken as long as nobody has to wait.
+ *
+ * A thread that finds the queue full or empty takes the lock, counts itself in as a
+ * waiting producer or consumer with an atomic increment, and tries again before it
+ * waits on notFull or notEmpty. A successful add or remove hands its slot over with
+ * a volatile store of the sequence, rather than the ordered store of
+ * ConcurrentArrayQueue, then reads the count of waiters on the other side. The
+ * volatile store cannot pass the volatile read that follows it, so either the change
+ * sees the waiter, and takes the lock to signal one waiter, or the waiter's retry
+ * sees the change. With nobody waiting, the count is only read, so its cache line
+ * stays shared between producers and consumers.
+ *
+ * Any number of threads may wait on each side. A change signals one of them only,
+ * and a thread that arrives without waiting may take the slot or item before the
+ * signalled one is running again, which then waits again. So when a waiter leaves,
+ * whether it succeeded, timed out or was interrupted, it passes the signal on to
+ * the next waiter if there is still something for it, so that no signal is lost.
+ *
+ * peek() and iterator() are those of ConcurrentArrayQueue.
+ *
+ *
+ * == performance benchmark ==
+ *
+ * Testing is performed against java.util.concurrent.ArrayBlockingQueue and
+ * java.util.concurrent.LinkedBlockingQueue with 4, 8 and 16 threads, half of them
+ * producers and half of them consumers.
+ *
+ * */
+
+public class ConcurrentArrayBlockingQueue<E> extends ConcurrentArrayQueue<E>
+		implements BlockingQueue<E> {
+
+	/* used for notification */
+	private final ReentrantLock lock = new ReentrantLock();
+
+	/* waited on by producers */
+	private final Condition notFull = lock.newCondition();
+
+	/* waited on by consumers */
+	private final Condition notEmpty = lock.newCondition();
+
+	/* number of producers waiting, changed under lock */
+	private final AtomicInteger putters = new AtomicInteger();
+
+	/* number of consumers waiting, changed under lock */
+	private final AtomicInteger takers = new AtomicInteger();
+
+	/* size is rounded up to a power of 2, and to 2 at least */
+	public ConcurrentArrayBlockingQueue(int size) {
+		super(size);
+	}
+
+	@Override
+	public void put(E e) throws InterruptedException {
+		if (!offer(e)) {
+			awaitOffer(e, false, 0);
+		}
+	}
+
+	@Override
+	public boolean offer(E e, long timeout, TimeUnit unit)
+			throws InterruptedException {
+		return offer(e) || awaitOffer(e, true, unit.toNanos(timeout));
+	}
+
+	@Override
+	public E take() throws InterruptedException {
+
+		E e = poll();
+		return e != null ? e : awaitPoll(false, 0);
+	}
+
+	@Override
+	public E poll(long timeout, TimeUnit unit) throws InterruptedException {
+
+		E e = poll();
+		return e != null ? e : awaitPoll(true, unit.toNanos(timeout));
+	}
+
+	/* adds with a CAS, and signals a waiting consumer if there is one */
+
+	@Override
+	public boolean offer(E e) {
+
+		if (!super.offer(e)) {
+			return false;
+		}
+
+		if (takers.get() != 0) {
+			signal(notEmpty);
+		}
+
+		return true;
+	}
+
+	/* removes with a CAS, and signals a waiting producer if there is one */
+
+	@Override
+	public E poll() {
+
+		E e = super.poll();
+
+		if (e == null) {
+			return null;
+		}
+
+		if (putters.get() != 0) {
+			signal(notFull);
+		}
+
+		return e;
+	}
+
+	@Override
+	public int drainTo(Collection<? super E> c) {
+		return drainTo(c, Integer.MAX_VALUE);
+	}
+
+	@Override
+	public int drainTo(Collection<? super E> c, int maxElements) {
+
+		if (c == null) {
+			throw new NullPointerException();
+		}
+
+		if (c == this) {
+			throw new IllegalArgumentException();
+		}
+
+		int n = 0;
+		E e;
+
+		while (n < maxElements && (e = super.poll()) != null) {
+			c.add(e);
+			++n;
+		}
+
+		/* a single signal for the batch, waiters pass it on */
+
+		if (n != 0 && putters.get() != 0) {
+			signal(notFull);
+		}
+
+		return n;
+	}
+
+	@Override
+	public int remainingCapacity() {
+		return capacity - size();
+	}
+
+	/*
+	 * Slow path of put() and timed offer(). Returns false if timed and the
+	 * time ran out first.
+	 */
+
+	private boolean awaitOffer(E e, boolean timed, long nanos)
+			throws InterruptedException {
+
+		final ReentrantLock lock = this.lock;
+		lock.lockInterruptibly();
+
+		try {
+
+			/* counted in before trying again */
+
+			putters.incrementAndGet();
+
+			try {
+				while (!super.offer(e)) {
+
+					if (!timed) {
+						notFull.await();
+					} else if (nanos <= 0) {
+						return false;
+					} else {
+						nanos = notFull.awaitNanos(nanos);
+					}
+				}
+			} finally {
+
+				/* pass the signal on, it may have been meant for us */
+
+				if (putters.decrementAndGet() != 0 && size() < capacity) {
+					notFull.signal();
+				}
+			}
+		} finally {
+			lock.unlock();
+		}
+
+		if (takers.get() != 0) {
+			signal(notEmpty);
+		}
+
+		return true;
+	}
+
+	/*
+	 * Slow path of take() and timed poll(). Returns null if timed and the time
+	 * ran out first.
+	 */
+
+	private E awaitPoll(boolean timed, long nanos) throws InterruptedException {
+
+		final ReentrantLock lock = this.lock;
+		lock.lockInterruptibly();
+
+		E e;
+
+		try {
+
+			/* same as awaitOffer() */
+
+			takers.incrementAndGet();
+
+			try {
+				while ((e = super.poll()) == null) {
+
+					if (!timed) {
+						notEmpty.await();
+					} else if (nanos <= 0) {
+						return null;
+					} else {
+						nanos = notEmpty.awaitNanos(nanos);
+					}
+				}
+			} finally {
+				if (takers.decrementAndGet() != 0 && !isEmpty()) {
+					notEmpty.signal();
+				}
+			}
+		} finally {
+			lock.unlock();
+		}
+
+		if (putters.get() != 0) {
+			signal(notFull);
+		}
+
+		return e;
+	}
+
+	/* a volatile store, so that the read of takers cannot pass it */
+
+	@Override
+	void publishPut(int slot, long index) {
+		sequences.set(slot, index + 1);
+	}
+
+	/* same as publishPut(), for the read of putters */
+
+	@Override
+	void publishTake(int slot, long index) {
+		sequences.set(slot, index + capacity);
+	}
+
+	private void signal(Condition cond) {
+
+		final ReentrantLock lock = this.lock;
+		lock.lock();
+		try {
+			cond.signal();
+		} finally {
+			lock.unlock();
+		}
+	}
+}
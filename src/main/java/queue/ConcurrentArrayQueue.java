@@ -4,11 +4,11 @@ import java.util.AbstractQueue;
 import java.util.Iterator;
 import java.util.NoSuchElementException;
 import java.util.Queue;
-import java.util.concurrent.atomic.AtomicInteger;
-import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
 /*
- * A bounded FIFO wait-free queue. 
+ * A bounded FIFO lock-free queue. 
  * 
  * Multiple producers and consumers can access the queue concurrently.
  * 
@@ -21,6 +21,41 @@ import java.util.concurrent.atomic.AtomicReference;
  * 
  * No lock is used. 
  * 
+ * putIndex and takeIndex are each held in a PaddedIndex, so that CAS'es by producers 
+ * and by consumers do not invalidate each other's cache line. 
+ * 
+ * Both indexes are 64-bit sequences that only grow. The capacity is the given size 
+ * rounded up to a power of 2, an index maps onto the array with "index & mask", and 
+ * the queue is full when putIndex - takeIndex == capacity. 
+ * 
+ * Each slot carries a sequence of its own, after Dmitry Vyukov's bounded MPMC queue, 
+ * which tells which lap the slot is in and whose turn it is: 
+ * 
+ * sequence == index      the slot is free for the producer of index 
+ * sequence == index + 1  the slot holds the item of index, for its consumer 
+ * 
+ * where index is a value of putIndex or takeIndex that maps onto the slot. A producer 
+ * claims index with a single CAS of putIndex from index to index + 1, which it tries 
+ * only when the sequence of the slot says index; it then writes the item and hands 
+ * the slot over with sequence = index + 1. A consumer does the same on takeIndex, and 
+ * hands the slot back for the next lap with sequence = index + capacity. So a slot 
+ * cannot be mistaken for the one of another lap (no ABA, as a null check on the item 
+ * would), and each add or remove succeeds with one CAS, with no helping CAS on the 
+ * index. The sequence stores are ordered stores (lazySet), and the item is written 
+ * before and read after them. The capacity is at least 2, as with a single slot, the 
+ * sequence of a slot just handed back, index + 1, would read as holding an item. 
+ * 
+ * A sequence behind index means the previous lap is not over yet: the queue is full 
+ * for a producer, or empty for a consumer, unless the other side has claimed the 
+ * slot and not yet handed it over, in which case offer() and poll() fail all the 
+ * same, as they never wait for another thread. A sequence ahead of index means 
+ * another thread has claimed index meanwhile, and we try again with a fresh index. 
+ * 
+ * The items are held in an AtomicReferenceArray and the sequences in an 
+ * AtomicLongArray, both flat arrays, rather than in an object per slot. So the ring 
+ * is two contiguous blocks of memory, and reaching an item takes no extra pointer 
+ * chase. 
+ * 
  * 
  * == performance benchmark ==
  * 
@@ -39,35 +74,39 @@ import java.util.concurrent.atomic.AtomicReference;
 public class ConcurrentArrayQueue<E> extends AbstractQueue<E> implements
 		Queue<E> {
 
-	/* number of items queued */
-	private final int size;
+	/* maximum number of items queued, a power of 2 */
+	final int capacity;
+
+	/* capacity - 1, maps an index onto items */
+	private final int mask;
 
 	/* queued items */
-	private final AtomicReference<E>[] items;
+	private final AtomicReferenceArray<E> items;
+
+	/* sequence of each slot, see above */
+	final AtomicLongArray sequences;
 
 	/* item index for next poll and remove */
-	private final AtomicInteger putIndex;
+	private final PaddedIndex putIndex;
 
 	/* item index for next offer and add */
-	private final AtomicInteger takeIndex;
-
-	/* index increment */
-	private int inc(int pos) {
-		return (++pos == size) ? 0 : pos;
-	}
+	private final PaddedIndex takeIndex;
 
+	/* size is rounded up to a power of 2, and to 2 at least */
 	public ConcurrentArrayQueue(int size) {
 
-		this.items = new AtomicReference[size];
+		this.capacity = Math.max(Pow2.roundToPowerOfTwo(size), 2);
+		this.mask = capacity - 1;
+		this.items = new AtomicReferenceArray<E>(capacity);
+		this.sequences = new AtomicLongArray(capacity);
 
-		/* initialize each item of the queue to null */
-		for (int i = 0; i < size; ++i) {
-			items[i] = new AtomicReference<E>();
+		/* slot i is free for the producer of index i */
+		for (int i = 0; i < capacity; ++i) {
+			sequences.lazySet(i, i);
 		}
 
-		this.size = size;
-		this.putIndex = new AtomicInteger(0);
-		this.takeIndex = new AtomicInteger(0);
+		this.putIndex = new PaddedIndex(0);
+		this.takeIndex = new PaddedIndex(0);
 	}
 
 	@Override
@@ -77,49 +116,41 @@ public class ConcurrentArrayQueue<E> extends AbstractQueue<E> implements
 			throw new NullPointerException();
 		}
 
-		while (true) {
+		final PaddedIndex putIndex = this.putIndex;
+		long index = putIndex.get();
 
-			int oldPutIndex = putIndex.get();
-			int newPutIndex = inc(oldPutIndex);
-
-			if (newPutIndex == this.takeIndex.get()) {
-				/* if full */
-				return false;
-			}
+		while (true) {
 
-			/*
-			 * Compare if item is null and set item to e is performed
-			 * atomically.
-			 */
+			int slot = (int) index & mask;
+			long sequence = sequences.get(slot);
 
-			if (items[oldPutIndex].compareAndSet(null, e)) {
+			if (sequence == index) {
 
 				/*
-				 * If item is successfully set to e, we need to further update
-				 * putIndex, which may have already been updated by another
-				 * producer.
-				 * 
-				 * CAS is used to ensure the consistent state of putIndex before
-				 * and after item is set to e. And only if putIndex remains the
-				 * same will we update it.
-				 * 
-				 * If not same, another producer has helped us by updating it.
+				 * The slot is free for index. Whoever moves putIndex past
+				 * index owns the slot, and no other producer touches it
+				 * until the next lap.
 				 */
 
-				putIndex.compareAndSet(oldPutIndex, newPutIndex);
-				return true;
+				if (putIndex.compareAndSet(index, index + 1)) {
+					items.lazySet(slot, e);
+					publishPut(slot, index);
+					return true;
+				}
+
+				index = putIndex.get();
+
+			} else if (sequence < index) {
+
+				/* the consumer of the previous lap is not done: full */
+
+				return false;
 
 			} else {
 
-				/*
-				 * If item is not null, what happens is that another producer
-				 * just updated the item but has not updated putIndex.
-				 * 
-				 * We here help that producer by updating the putIndex. CAS is
-				 * used to ensure consistency state of putIndex.
-				 */
+				/* another producer has claimed index meanwhile */
 
-				putIndex.compareAndSet(oldPutIndex, newPutIndex);
+				index = putIndex.get();
 			}
 		}
 	}
@@ -127,82 +158,67 @@ public class ConcurrentArrayQueue<E> extends AbstractQueue<E> implements
 	@Override
 	public E poll() {
 
+		final PaddedIndex takeIndex = this.takeIndex;
+		long index = takeIndex.get();
+
 		while (true) {
 
-			int oldTakeIndex = takeIndex.get();
-			int newTakeIndex = inc(oldTakeIndex);
+			int slot = (int) index & mask;
+			long sequence = sequences.get(slot);
 
-			if (oldTakeIndex == this.putIndex.get()) {
-				/* if empty */
-				return null;
-			}
+			if (sequence == index + 1) {
 
-			E e = items[oldTakeIndex].get();
+				/* The slot holds the item of index. Same as in offer(). */
 
-			/*
-			 * Compare if item is not null and set item to null is performed
-			 * atomically.
-			 */
+				if (takeIndex.compareAndSet(index, index + 1)) {
+					E e = items.get(slot);
+					items.lazySet(slot, null);
+					publishTake(slot, index);
+					return e;
+				}
 
-			if (e != null && items[oldTakeIndex].compareAndSet(e, null)) {
+				index = takeIndex.get();
 
-				/*
-				 * If the item is set to null, we need to further update
-				 * takeIndex, which may have already been updated by another
-				 * consumer.
-				 * 
-				 * CAS is used to ensure the consistent state of takeIndex
-				 * before and after item is set to null. And only if takeIndex
-				 * remains the same will we update it.
-				 * 
-				 * If not same, another consumer has already helped us by
-				 * updating it.
-				 */
+			} else if (sequence < index + 1) {
+
+				/* the producer of index is not done: empty */
+
+				return null;
 
-				takeIndex.compareAndSet(oldTakeIndex, newTakeIndex);
-				return e;
 			} else {
 
-				/*
-				 * If item is null, what happens is that another consumer just
-				 * set the item to null but has not updated takeIndex.
-				 * 
-				 * We here help that consumer by updating the takeIndex. CAS is
-				 * used to ensure consistency state of takeIndex.
-				 */
+				/* another consumer has claimed index meanwhile */
 
-				takeIndex.compareAndSet(oldTakeIndex, newTakeIndex);
+				index = takeIndex.get();
 			}
 		}
 	}
 
-	/* Same as poll, except that we don't modify the queue. */
+	/*
+	 * Same as poll, except that we don't modify the queue. The item is good if
+	 * the slot still holds the item of index once it has been read.
+	 */
 
 	@Override
 	public E peek() {
+
 		while (true) {
 
-			int oldTakeIndex = takeIndex.get();
-			int newTakeIndex = inc(oldTakeIndex);
+			long index = takeIndex.get();
+			int slot = (int) index & mask;
 
-			if (oldTakeIndex == this.putIndex.get()) {
-				return null;
-			}
+			if (sequences.get(slot) != index + 1) {
 
-			E e = items[oldTakeIndex].get();
-			if (e != null) {
-				return e;
-			} else {
+				if (index == takeIndex.get()) {
+					return null;
+				}
 
-				/*
-				 * Another consumer has just set item to null but has not
-				 * updated takeIndex.
-				 * 
-				 * We here help that consumer by updating takeIndex. CAS is used
-				 * to ensure consistent state of takeIndex.
-				 */
+				continue;
+			}
 
-				takeIndex.compareAndSet(oldTakeIndex, newTakeIndex);
+			E e = items.get(slot);
+			if (e != null && sequences.get(slot) == index + 1) {
+				return e;
 			}
 		}
 	}
@@ -214,7 +230,14 @@ public class ConcurrentArrayQueue<E> extends AbstractQueue<E> implements
 
 	@Override
 	public int size() {
-		return (putIndex.get() + size - takeIndex.get()) % size;
+
+		/*
+		 * same as ArrayQuickQueue.size(), with any number of consumers moving
+		 * on before putIndex is read
+		 */
+
+		long take = takeIndex.get();
+		return (int) Math.min(putIndex.get() - take, capacity);
 	}
 
 	@Override
@@ -222,32 +245,68 @@ public class ConcurrentArrayQueue<E> extends AbstractQueue<E> implements
 		return new Iter();
 	}
 
+	/*
+	 * Hands the slot of index over to its consumer. An ordered store is
+	 * enough here; the blocking queue overrides it.
+	 */
+
+	void publishPut(int slot, long index) {
+		sequences.lazySet(slot, index + 1);
+	}
+
+	/* hands the slot of index back for the next lap, same as publishPut() */
+
+	void publishTake(int slot, long index) {
+		sequences.lazySet(slot, index + capacity);
+	}
+
+	/*
+	 * Weakly consistent: goes from takeIndex to putIndex as they were when
+	 * each slot is visited, skipping items removed meanwhile, and stops at an
+	 * item not yet handed over by its producer.
+	 */
+
 	private class Iter implements Iterator<E> {
 
-		private int curPos;
+		private long curPos;
 		private E curObject;
 
 		Iter() {
-			init();
+			curPos = takeIndex.get() - 1;
+			advance();
 		}
 
-		private void init() {
-
-			curPos = takeIndex.get();
+		/* moves curPos on to the next item, or sets curObject to null */
+		private void advance() {
 
 			while (true) {
 
-				if (curPos == putIndex.get()) {
+				curPos = Math.max(curPos + 1, takeIndex.get());
+
+				if (curPos >= putIndex.get()) {
+					curObject = null;
+					return;
+				}
+
+				int slot = (int) curPos & mask;
+				long sequence = sequences.get(slot);
+
+				if (sequence < curPos + 1) {
+
+					/* not handed over yet */
+
 					curObject = null;
-					break;
+					return;
 				}
 
-				curObject = items[curPos].get();
-				if (curObject != null) {
-					break;
+				if (sequence == curPos + 1) {
+					curObject = items.get(slot);
+					if (curObject != null && sequences.get(slot) == curPos + 1) {
+						return;
+					}
 				}
 
-				curPos = takeIndex.get();
+				/* removed meanwhile */
 			}
 		}
 
@@ -264,21 +323,7 @@ public class ConcurrentArrayQueue<E> extends AbstractQueue<E> implements
 			}
 
 			E obj = curObject;
-
-			while (true) {
-
-				curPos = inc(curPos);
-
-				if (curPos == putIndex.get()) {
-					curObject = null;
-					break;
-				}
-
-				curObject = items[curPos].get();
-				if (curObject != null) {
-					break;
-				}
-			}
+			advance();
 
 			return obj;
 		}
@@ -0,0 +1,404 @@
+package queue;
+
+import java.util.AbstractQueue;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+
+/*
+ * An unbounded FIFO lock-free queue made of linked array chunks.
+ *
+ * Multiple producers and consumers can access the queue concurrently.
+ *
+ * == implementation ==
+ *
+ * java.util.concurrent.ConcurrentLinkedQueue allocates a node per item, and its
+ * items are scattered over the heap. ConcurrentArrayQueue keeps its items in an
+ * array, but is bounded, and offer() fails when it is full. ConcurrentLinkedArrayQueue
+ * is a list of chunks, each an array of a fixed power of 2 size: offer() never
+ * fails, a chunk is allocated once per chunk size items, and consecutive items sit
+ * next to each other in memory.
+ *
+ * Items are numbered by putIndex and takeIndex, 64-bit sequences held in PaddedIndex
+ * as in the other queues. Item index lives in chunk index >>> shift, at slot
+ * index & mask, and each chunk knows its own number, id. A producer claims an index
+ * with putIndex.getAndAdd(1), which never fails. A consumer claims one with a CAS
+ * of takeIndex, only while takeIndex < putIndex, so that poll() returns null on an
+ * empty queue. Either side then looks for its chunk, appending it if no producer
+ * has yet.
+ *
+ * The producer of an index may not have written its item yet when the consumer
+ * gets there, and may be descheduled for as long as the scheduler likes. So the
+ * consumer waits for the item for SPINS yields at most, then gives the index up,
+ * as FetchAddArrayQueue does: it marks the empty slot TAKEN with a CAS and claims
+ * a new index, or returns null if there is none. The producer writes its item with
+ * a CAS from null, so it either gets there first and the consumer takes the item,
+ * or finds TAKEN and takes a new index for the item. offer() and poll() are
+ * lock-free: a stalled producer holds up no consumer, only the reuse of its chunk.
+ *
+ * head is the oldest chunk not fully consumed, and tail the newest chunk a producer
+ * has found, a hint for producers to start looking from. Each consumer empties its
+ * slot and counts it in released, and a slot given up is emptied and counted by its
+ * producer when it finds TAKEN; once a chunk is fully consumed, the oldest chunks
+ * are unlinked from head in order, and the one that unlinks a chunk puts it in a
+ * small pool, from which new chunks are taken before allocating. So a queue that
+ * stays within a few chunks allocates nothing.
+ *
+ * A thread that was slow to walk the list may still hold a chunk that has since
+ * been recycled. So an unlinked chunk gets id UNLINKED first, then its next is
+ * cleared, and a walk reads id before and after reading next, starting over from
+ * head if it changed: it never follows a recycled chunk. A chunk is linked first
+ * and gets its id after, so that no walk can find it by id unless it is in the
+ * list; a walk that meets a chunk just linked starts over until the id is there.
+ * The appender checks the id of the chunk it linked to once more after the CAS,
+ * and if it was recycled in between, takes the link back instead. A chunk cannot be
+ * recycled while a thread has a claimed index in it, as the chunk is not fully
+ * consumed before that index is, by both of its threads, so once the chunk of an
+ * index is found, it stays.
+ *
+ * peek() and iterator() are not supported at this point.
+ *
+ *
+ * == performance benchmark ==
+ *
+ * Testing is performed against java.util.concurrent.ConcurrentLinkedQueue.
+ *
+ * */
+
+public class ConcurrentLinkedArrayQueue<E> extends AbstractQueue<E> implements
+		Queue<E> {
+
+	/* default number of items per chunk */
+	static final int DEFAULT_CHUNK_SIZE = 1024;
+
+	/* maximum number of fully consumed chunks kept for reuse */
+	static final int POOL_SIZE = 4;
+
+	/* id of a chunk not in the list, above any id in use */
+	static final long UNLINKED = Long.MAX_VALUE;
+
+	/* number of yields a consumer waits for the item of its index */
+	static final int SPINS = 16;
+
+	/* left in a slot by a consumer that gave up its index, see above */
+	private static final Object TAKEN = new Object();
+
+	/* a fixed size array of items, linked to the next one */
+	static final class Chunk<E> {
+
+		/* Chunk.class, typed for the field updaters */
+		@SuppressWarnings("unchecked")
+		private static final Class<Chunk<?>> CHUNK = (Class<Chunk<?>>) (Class<?>) Chunk.class;
+
+		private static final AtomicReferenceFieldUpdater<Chunk<?>, Chunk<?>> nextUpdater = AtomicReferenceFieldUpdater
+				.newUpdater(CHUNK, CHUNK, "next");
+
+		private static final AtomicIntegerFieldUpdater<Chunk<?>> releasedUpdater = AtomicIntegerFieldUpdater
+				.newUpdater(CHUNK, "released");
+
+		/*
+		 * the items, null in a slot not yet written or already consumed, TAKEN in
+		 * a slot given up
+		 */
+		final AtomicReferenceArray<Object> items;
+
+		/* number of the chunk, i.e. index >>> shift of its items */
+		volatile long id;
+
+		/* the chunk with id + 1 */
+		volatile Chunk<E> next;
+
+		/* number of slots consumed */
+		volatile int released;
+
+		Chunk(int size, long id) {
+			this.items = new AtomicReferenceArray<Object>(size);
+			this.id = id;
+		}
+
+		/* once unlinked; id is written first, see above */
+		void unlinked() {
+			this.id = UNLINKED;
+			this.next = null;
+		}
+
+		boolean casNext(Chunk<E> expect, Chunk<E> update) {
+			return nextUpdater.compareAndSet(this, expect, update);
+		}
+
+		/* returns the number of slots consumed, ours included */
+		int release() {
+			return releasedUpdater.incrementAndGet(this);
+		}
+
+		boolean casReleased(int expect, int update) {
+			return releasedUpdater.compareAndSet(this, expect, update);
+		}
+	}
+
+	/* number of items per chunk, a power of 2 */
+	private final int chunkSize;
+
+	/* chunkSize - 1, maps an index onto a slot */
+	private final int mask;
+
+	/* log2(chunkSize), maps an index onto a chunk id */
+	private final int shift;
+
+	/* item index for next poll and remove */
+	private final PaddedIndex takeIndex;
+
+	/* item index for next offer and add */
+	private final PaddedIndex putIndex;
+
+	/* the oldest chunk not yet unlinked */
+	private final AtomicReference<Chunk<E>> head;
+
+	/* a recent chunk, where producers start looking */
+	private final AtomicReference<Chunk<E>> tail;
+
+	/* fully consumed chunks, for reuse */
+	private final ConcurrentArrayQueue<Chunk<E>> pool;
+
+	public ConcurrentLinkedArrayQueue() {
+		this(DEFAULT_CHUNK_SIZE);
+	}
+
+	/* chunkSize is rounded up to a power of 2 */
+	public ConcurrentLinkedArrayQueue(int chunkSize) {
+
+		this.chunkSize = Pow2.roundToPowerOfTwo(chunkSize);
+		this.mask = this.chunkSize - 1;
+		this.shift = Integer.numberOfTrailingZeros(this.chunkSize);
+		this.takeIndex = new PaddedIndex(0);
+		this.putIndex = new PaddedIndex(0);
+
+		Chunk<E> first = new Chunk<E>(this.chunkSize, 0);
+		this.head = new AtomicReference<Chunk<E>>(first);
+		this.tail = new AtomicReference<Chunk<E>>(first);
+		this.pool = new ConcurrentArrayQueue<Chunk<E>>(POOL_SIZE);
+	}
+
+	/* always adds, as the queue is unbounded */
+
+	@Override
+	public boolean offer(E e) {
+
+		if (e == null) {
+			throw new NullPointerException();
+		}
+
+		while (true) {
+
+			long index = putIndex.getAndAdd(1);
+			long id = index >>> shift;
+			Chunk<E> chunk;
+
+			do {
+				Chunk<E> start = tail.get();
+				if (start.id > id) {
+					start = head.get();
+				}
+				chunk = find(start, id);
+			} while (chunk == null);
+
+			/* move the hint on, so that the next producers start there */
+
+			Chunk<E> hint = tail.get();
+			long hintId = hint.id;
+			if (hintId < id || hintId == UNLINKED) {
+				tail.compareAndSet(hint, chunk);
+			}
+
+			int slot = (int) index & mask;
+
+			if (chunk.items.compareAndSet(slot, null, e)) {
+				return true;
+			}
+
+			/* the consumer gave the index up; empty and count the slot for it */
+
+			chunk.items.lazySet(slot, null);
+
+			if (chunk.release() == chunkSize) {
+				unlink();
+			}
+		}
+	}
+
+	@Override
+	@SuppressWarnings("unchecked")
+	public E poll() {
+
+		final PaddedIndex takeIndex = this.takeIndex;
+
+		while (true) {
+
+			long index;
+
+			do {
+				index = takeIndex.get();
+
+				if (index >= putIndex.get()) {
+					/* if empty */
+					return null;
+				}
+
+			} while (!takeIndex.compareAndSet(index, index + 1));
+
+			long id = index >>> shift;
+			Chunk<E> chunk;
+
+			do {
+				chunk = find(head.get(), id);
+			} while (chunk == null);
+
+			/* the producer of index may not have written the item yet */
+
+			int slot = (int) index & mask;
+			Object e = chunk.items.get(slot);
+
+			for (int i = 0; e == null && i < SPINS; ++i) {
+				Thread.yield();
+				e = chunk.items.get(slot);
+			}
+
+			if (e == null) {
+
+				if (chunk.items.compareAndSet(slot, null, TAKEN)) {
+					/* given up, the producer empties and counts the slot */
+					continue;
+				}
+
+				/* written in between */
+				e = chunk.items.get(slot);
+			}
+
+			chunk.items.lazySet(slot, null);
+
+			if (chunk.release() == chunkSize) {
+				unlink();
+			}
+
+			return (E) e;
+		}
+	}
+
+	@Override
+	public E peek() {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public Iterator<E> iterator() {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public int size() {
+
+		/* same as ArrayQuickQueue.size(), capped as the queue is unbounded */
+
+		long take = takeIndex.get();
+		return (int) Math.min(putIndex.get() - take, Integer.MAX_VALUE);
+	}
+
+	/*
+	 * Walks from chunk to the chunk numbered id, appending chunks as needed.
+	 * Returns null if the walk has to start over, see above.
+	 */
+
+	private Chunk<E> find(Chunk<E> chunk, long id) {
+
+		while (true) {
+
+			long current = chunk.id;
+
+			if (current == id) {
+				return chunk;
+			}
+
+			if (current > id) {
+				return null;
+			}
+
+			Chunk<E> next = chunk.next;
+
+			if (chunk.id != current) {
+				/* recycled under us */
+				return null;
+			}
+
+			if (next == null) {
+				append(chunk, current);
+				continue;
+			}
+
+			if (next.id != current + 1) {
+				/* just linked, id yet to come */
+				return null;
+			}
+
+			chunk = next;
+		}
+	}
+
+	/* links a chunk numbered id + 1 after chunk, unless somebody else has */
+	private void append(Chunk<E> chunk, long id) {
+
+		Chunk<E> next = pool.poll();
+
+		if (next == null) {
+			next = new Chunk<E>(chunkSize, UNLINKED);
+		} else {
+			next.released = 0;
+		}
+
+		if (!chunk.casNext(null, next)) {
+			pool.offer(next);
+		} else if (chunk.id == id) {
+			next.id = id + 1;
+		} else if (chunk.casNext(next, null)) {
+			/* chunk was recycled since it was found */
+			pool.offer(next);
+		}
+	}
+
+	/*
+	 * Unlinks the fully consumed chunks from head, in order, and puts them in
+	 * the pool. A chunk is unlinked once its next one is linked, so that head
+	 * is never null.
+	 *
+	 * The head chunk may have been recycled and come back as head since it was
+	 * read, so the right to unlink it is claimed on the chunk itself, moving
+	 * released from chunkSize to chunkSize + 1, which only a fully consumed
+	 * chunk allows, and only once. The claim is handed back if the chunk turns
+	 * out not to be unlinkable yet.
+	 */
+
+	private void unlink() {
+
+		while (true) {
+
+			Chunk<E> first = head.get();
+
+			if (!first.casReleased(chunkSize, chunkSize + 1)) {
+				return;
+			}
+
+			Chunk<E> next = first.next;
+
+			if (next == null || next.id != first.id + 1
+					|| !head.compareAndSet(first, next)) {
+				first.released = chunkSize;
+				return;
+			}
+
+			first.unlinked();
+			pool.offer(first);
+		}
+	}
+}
@@ -0,0 +1,286 @@
+package queue;
+
+import java.util.AbstractQueue;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/*
+ * A bounded FIFO queue for many producers and many consumers under high contention.
+ *
+ * == implementation ==
+ *
+ * ConcurrentArrayQueue claims a slot with a CAS on putIndex or takeIndex, which fails
+ * and is retried whenever another thread got there first. With many threads on each
+ * side, most CAS'es fail, and the more threads there are, the more work is thrown
+ * away. FetchAddArrayQueue claims slots with fetch-and-add (getAndAdd, a single
+ * LOCK XADD on x86), which always succeeds: each thread gets an index of its own in
+ * one step, however many threads are at it, as in LCRQ and SCQ.
+ *
+ * A fetch-and-add cannot fail, so it cannot tell that the queue is full or empty
+ * either. Each side first takes a permit: free counts the slots no producer has
+ * claimed yet, and available the items no consumer has claimed yet. A producer
+ * decrements free, and if there was none, gives it back and fails; then it takes
+ * an index with putIndex.getAndAdd(1). A consumer does the same with available and
+ * takeIndex. A producer gives an item to available once it has written it, and a
+ * consumer gives a slot to free once it has emptied it.
+ *
+ * The permits only count; they do not make the slot of a given index usable. The
+ * consumer of the previous lap may not have emptied it yet, or the producer of the
+ * index may not have written the item yet, and the thread that claimed it may be
+ * descheduled for as long as the scheduler likes. So nobody waits on a slot: as in
+ * SCQ, a thread that finds its slot not ready gives up the index, makes sure that
+ * the other side gives it up as well, and takes a new index, keeping its permit.
+ *
+ * Each slot carries a state: the index it was last used for, and whether it is
+ * EMPTY, WRITING the item of that index, or FULL with it; EMPTY holds the next
+ * index the slot may be used for. A producer claims an EMPTY slot with a CAS to
+ * WRITING, writes the item and publishes it with a CAS to FULL; a consumer takes
+ * the item and adds to the state to make it EMPTY for the next index. The other
+ * cases are:
+ *
+ *  - a consumer that finds the slot EMPTY, its producer not there yet, moves the
+ *    state past its index, so that the producer gives the index up too.
+ *  - a consumer that finds the slot WRITING for its index, or busy with an earlier
+ *    index, sets the UNSAFE bit of the state. The producer writing then fails to
+ *    publish, takes its item back and gives the index up. A slot left UNSAFE by an
+ *    earlier index is used by a producer only as long as its consumer has not
+ *    taken its index yet, which takeIndex tells.
+ *  - a producer that finds the slot busy, or used by a later index, gives it up.
+ *
+ * offer() and poll() are lock-free: a thread takes a new index only when another
+ * one is in the way, and a stalled thread makes a single slot unusable while it
+ * is out, never the queue.
+ *
+ * A permit taken and given back on failure may make another thread fail while it
+ * is out, so offer() may fail when the queue is one short of full, and poll() when
+ * it holds a single item, as long as other threads are failing at the same time.
+ *
+ * The capacity is at least 2, as in ConcurrentArrayQueue.
+ *
+ * peek() and iterator() are not supported at this point.
+ *
+ *
+ * == performance benchmark ==
+ *
+ * Testing is performed against ConcurrentArrayQueue and
+ * java.util.concurrent.ConcurrentLinkedQueue, with the number of producers and
+ * consumers growing from 1 to 16 each.
+ *
+ * */
+
+public class FetchAddArrayQueue<E> extends AbstractQueue<E> implements Queue<E> {
+
+	/* kinds of slot states, in the low bits under the index */
+	private static final int EMPTY = 0;
+	private static final int WRITING = 1;
+	private static final int FULL = 2;
+
+	/* set by a consumer that gave up on a slot, see above */
+	private static final long UNSAFE = Long.MIN_VALUE;
+
+	/* maximum number of items queued, a power of 2 */
+	private final int capacity;
+
+	/* capacity - 1, maps an index onto items */
+	private final int mask;
+
+	/* queued items */
+	private final AtomicReferenceArray<E> items;
+
+	/* state of each slot, see above */
+	private final AtomicLongArray states;
+
+	/* item index for next poll and remove */
+	private final PaddedIndex takeIndex;
+
+	/* item index for next offer and add */
+	private final PaddedIndex putIndex;
+
+	/* permits for producers: slots not claimed by a producer */
+	private final PaddedIndex free;
+
+	/* permits for consumers: items not claimed by a consumer */
+	private final PaddedIndex available;
+
+	/* size is rounded up to a power of 2, and to 2 at least */
+	public FetchAddArrayQueue(int size) {
+
+		this.capacity = Math.max(Pow2.roundToPowerOfTwo(size), 2);
+		this.mask = capacity - 1;
+		this.items = new AtomicReferenceArray<E>(capacity);
+		this.states = new AtomicLongArray(capacity);
+
+		/* slot i is free for the producer of index i */
+		for (int i = 0; i < capacity; ++i) {
+			states.lazySet(i, state(i, EMPTY));
+		}
+
+		this.takeIndex = new PaddedIndex(0);
+		this.putIndex = new PaddedIndex(0);
+		this.free = new PaddedIndex(capacity);
+		this.available = new PaddedIndex(0);
+	}
+
+	@Override
+	public boolean offer(E e) {
+
+		if (e == null) {
+			throw new NullPointerException();
+		}
+
+		/* a read first, so that a full queue is not written to */
+
+		final PaddedIndex free = this.free;
+
+		if (free.get() <= 0) {
+			return false;
+		}
+
+		if (free.getAndAdd(-1) <= 0) {
+			free.getAndAdd(1);
+			return false;
+		}
+
+		while (true) {
+
+			long index = putIndex.getAndAdd(1);
+			int slot = (int) index & mask;
+			long state = states.get(slot);
+
+			/* busy, used by a later index, or given up by our consumer */
+
+			if (kind(state) != EMPTY || index(state) > index) {
+				continue;
+			}
+
+			if (state < 0 && takeIndex.get() > index) {
+				continue;
+			}
+
+			if (!states.compareAndSet(slot, state, state(index, WRITING))) {
+				continue;
+			}
+
+			items.lazySet(slot, e);
+
+			if (states.compareAndSet(slot, state(index, WRITING),
+					state(index, FULL))) {
+				available.getAndAdd(1);
+				return true;
+			}
+
+			/* a consumer gave up on the slot: take the item back */
+
+			items.lazySet(slot, null);
+			states.getAndAdd(slot, state(index + 1, EMPTY)
+					- state(index, WRITING));
+		}
+	}
+
+	@Override
+	public E poll() {
+
+		/* same as offer() */
+
+		final PaddedIndex available = this.available;
+
+		if (available.get() <= 0) {
+			return null;
+		}
+
+		if (available.getAndAdd(-1) <= 0) {
+			available.getAndAdd(1);
+			return null;
+		}
+
+		while (true) {
+
+			long index = takeIndex.getAndAdd(1);
+			int slot = (int) index & mask;
+
+			if (claim(slot, index)) {
+
+				/* FULL to EMPTY for the next index, keeping UNSAFE */
+
+				E e = items.get(slot);
+				items.lazySet(slot, null);
+				states.getAndAdd(slot, state(index + 1, EMPTY)
+						- state(index, FULL));
+				free.getAndAdd(1);
+
+				return e;
+			}
+		}
+	}
+
+	@Override
+	public E peek() {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public Iterator<E> iterator() {
+		throw new UnsupportedOperationException();
+	}
+
+	/*
+	 * The consumer of index: returns true if the slot is FULL with its item,
+	 * otherwise makes sure that the producer of index gives it up too, see
+	 * above, and returns false.
+	 */
+
+	private boolean claim(int slot, long index) {
+
+		while (true) {
+
+			long state = states.get(slot);
+			long last = index(state);
+
+			if (last > index) {
+				return false;
+			}
+
+			if (kind(state) == EMPTY) {
+
+				/* the producer is not there yet */
+
+				if (states.compareAndSet(slot, state, state(index + 1, EMPTY)
+						| (state & UNSAFE))) {
+					return false;
+				}
+
+			} else if (kind(state) == FULL && last == index) {
+				return true;
+
+			} else if (state < 0
+					|| states.compareAndSet(slot, state, state | UNSAFE)) {
+
+				/* being written, or busy with an earlier index */
+
+				return false;
+			}
+		}
+	}
+
+	private static long state(long index, int kind) {
+		return index << 2 | kind;
+	}
+
+	private static long index(long state) {
+		return (state & ~UNSAFE) >>> 2;
+	}
+
+	private static int kind(long state) {
+		return (int) state & 3;
+	}
+
+	/* items written and not claimed by a consumer */
+
+	@Override
+	public int size() {
+		return (int) Math.max(0, Math.min(available.get(), capacity));
+	}
+
+}
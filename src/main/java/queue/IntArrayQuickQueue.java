@@ -0,0 +1,256 @@
+package queue;
+
+/* A single-producer-single-consumer bounded queue of int values.
+ *
+ * == implementation ==
+ *
+ * Same as ArrayQuickQueue, except that items are held in an int[] rather than an E[].
+ * Nothing is boxed, so the hot path allocates nothing, and a slot takes 4 bytes
+ * instead of a reference plus a java.lang.Integer.
+ *
+ * As in ArrayQuickQueue, whether a slot holds an item is told by putIndex and
+ * takeIndex alone, so no value has to be reserved to mark an empty slot. poll()
+ * still needs to say "empty" without boxing, so it returns the missing value given
+ * to the constructor, Integer.MIN_VALUE by default, and that value cannot be queued.
+ *
+ * No lock or CAS is used. The indexes are 64-bit sequences held in PaddedIndex, each
+ * side caches the other side's index, and publishes its own with an ordered store.
+ * Bulk offer and poll publish the index once per batch.
+ *
+ * IntArrayQuickBlockingQueue adds the blocking operations on top of this one.
+ *
+ * */
+
+public class IntArrayQuickQueue {
+
+	/* maximum number of items queued, a power of 2 */
+	final int capacity;
+
+	/* capacity - 1, maps an index onto items */
+	final int mask;
+
+	/* queued items */
+	final int[] items;
+
+	/* returned by poll() on an empty queue, cannot be queued */
+	final int missingValue;
+
+	/*
+	 * item index for next poll, with the consumer's copy of putIndex in
+	 * takeIndex.cache
+	 */
+	final PaddedIndex takeIndex;
+
+	/*
+	 * item index for next offer, with the producer's copy of takeIndex in
+	 * putIndex.cache
+	 */
+	final PaddedIndex putIndex;
+
+	/* size is rounded up to a power of 2 */
+	public IntArrayQuickQueue(int size) {
+		this(size, Integer.MIN_VALUE);
+	}
+
+	/* size is rounded up to a power of 2 */
+	public IntArrayQuickQueue(int size, int missingValue) {
+		this.capacity = Pow2.roundToPowerOfTwo(size);
+		this.mask = capacity - 1;
+		this.items = new int[capacity];
+		this.missingValue = missingValue;
+		this.takeIndex = new PaddedIndex(0);
+		this.putIndex = new PaddedIndex(0);
+	}
+
+	/* instant add if possible; otherwise false is returned. */
+
+	public boolean offer(int e) {
+
+		if (e == missingValue) {
+			throw new IllegalArgumentException();
+		}
+
+		final PaddedIndex putIndex = this.putIndex;
+		long index = putIndex.get();
+
+		if (index - putIndex.cache == capacity) {
+
+			/* looks full, refresh the copy from takeIndex and check again. */
+
+			putIndex.cache = takeIndex.get();
+			if (index - putIndex.cache == capacity) {
+				return false;
+			}
+		}
+
+		/* order has to be maintained. */
+
+		items[(int) index & mask] = e;
+		publishPut(index, index + 1);
+
+		return true;
+	}
+
+	/* instant remove if possible; otherwise the missing value is returned. */
+
+	public int poll() {
+
+		final PaddedIndex takeIndex = this.takeIndex;
+		long index = takeIndex.get();
+
+		if (index == takeIndex.cache) {
+
+			/* looks empty, refresh the copy from putIndex and check again. */
+
+			takeIndex.cache = putIndex.get();
+			if (index == takeIndex.cache) {
+				return missingValue;
+			}
+		}
+
+		/* order has to be maintained. */
+
+		int e = items[(int) index & mask];
+		publishTake(index, index + 1);
+
+		return e;
+	}
+
+	/*
+	 * Adds up to len items of src, starting at off, and returns the number of
+	 * items added. putIndex is published once for the whole batch.
+	 */
+
+	public int offer(int[] src, int off, int len) {
+
+		if (off < 0 || len < 0 || len > src.length - off) {
+			throw new IndexOutOfBoundsException();
+		}
+
+		final PaddedIndex putIndex = this.putIndex;
+		long index = putIndex.get();
+		int n = free(index, len);
+
+		for (int i = 0; i < n; ++i) {
+			if (src[off + i] == missingValue) {
+				throw new IllegalArgumentException();
+			}
+		}
+
+		/* the batch may wrap around the end of the array */
+
+		int start = (int) index & mask;
+		int first = Math.min(n, capacity - start);
+		System.arraycopy(src, off, items, start, first);
+		System.arraycopy(src, off + first, items, 0, n - first);
+
+		if (n > 0) {
+			publishPut(index, index + n);
+		}
+
+		return n;
+	}
+
+	/*
+	 * Removes up to max items into dst, starting at off, and returns the
+	 * number of items removed. takeIndex is published once for the whole
+	 * batch.
+	 */
+
+	public int poll(int[] dst, int off, int max) {
+
+		if (off < 0 || max < 0 || max > dst.length - off) {
+			throw new IndexOutOfBoundsException();
+		}
+
+		final PaddedIndex takeIndex = this.takeIndex;
+		long index = takeIndex.get();
+		int n = available(index, max);
+
+		/* the batch may wrap around the end of the array */
+
+		int start = (int) index & mask;
+		int first = Math.min(n, capacity - start);
+		System.arraycopy(items, start, dst, off, first);
+		System.arraycopy(items, 0, dst, off + first, n - first);
+
+		if (n > 0) {
+			publishTake(index, index + n);
+		}
+
+		return n;
+	}
+
+	/* value returned by poll() on an empty queue */
+	public int missingValue() {
+		return missingValue;
+	}
+
+	public boolean isEmpty() {
+		return size() == 0;
+	}
+
+	public int size() {
+
+		/* same as ArrayQuickQueue.size() */
+
+		long take = takeIndex.get();
+		return (int) Math.min(putIndex.get() - take, capacity);
+	}
+
+	/*
+	 * Producer only: makes the items written from oldIndex on visible to the
+	 * consumer. An ordered store is enough here; the blocking queue overrides
+	 * it to notify a waiting consumer.
+	 */
+
+	void publishPut(long oldIndex, long newIndex) {
+		putIndex.lazySet(newIndex);
+	}
+
+	/*
+	 * Consumer only: hands the slots read from oldIndex on back to the
+	 * producer. An ordered store is enough here; the blocking queue overrides
+	 * it to notify a waiting producer.
+	 */
+
+	void publishTake(long oldIndex, long newIndex) {
+		takeIndex.lazySet(newIndex);
+	}
+
+	/*
+	 * Producer only: number of free slots after index, up to max. takeIndex is
+	 * read only if the copy of it cannot grant max.
+	 */
+
+	int free(long index, int max) {
+
+		final PaddedIndex putIndex = this.putIndex;
+		long free = capacity - (index - putIndex.cache);
+
+		if (free < max) {
+			putIndex.cache = takeIndex.get();
+			free = capacity - (index - putIndex.cache);
+		}
+
+		return (int) Math.min(free, max);
+	}
+
+	/*
+	 * Consumer only: number of items queued from index, up to max. putIndex is
+	 * read only if the copy of it cannot grant max.
+	 */
+
+	int available(long index, int max) {
+
+		final PaddedIndex takeIndex = this.takeIndex;
+		long available = takeIndex.cache - index;
+
+		if (available < max) {
+			takeIndex.cache = putIndex.get();
+			available = takeIndex.cache - index;
+		}
+
+		return (int) Math.min(available, max);
+	}
+}
@@ -0,0 +1,998 @@
+package queue;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.AbstractQueue;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.CRC32;
+
+/* A bounded blocking queue whose items are kept in a journal on disk, so that they
+ * survive a restart.
+ *
+ * == implementation ==
+ *
+ * Items are turned into bytes by a Codec and appended to the journal, a directory
+ * of segment files of a fixed size, each mapped into memory. A record is the length
+ * of the item, a CRC32 of the length and the bytes, and the bytes themselves. A
+ * record never spans two segments: when it does not fit in what is left of a
+ * segment, a length of -1 marks the end of the segment and the record goes to the
+ * start of the next one.
+ * A position in the journal is a 64-bit sequence, segment * segmentSize + offset,
+ * so positions only grow.
+ *
+ * The position of the next item to take is kept in a file of its own, also mapped,
+ * and updated by every take. When the consumer moves past a segment, the segment is
+ * deleted. The size of the segments is kept in the position file as well.
+ *
+ * Recovery on open reads the journal from the consumer position, checking every
+ * record against its CRC. The first record that is missing, torn or corrupt ends
+ * the journal: the rest of its segment is zeroed and any later segment is deleted,
+ * and the next put appends from there. The items found become the content of the
+ * queue, so their number may exceed the capacity; put() then waits until takes
+ * bring it below.
+ *
+ * Producers and consumers each have a lock of their own, putLock and takeLock, and
+ * share only the count of items, the same way java.util.concurrent.LinkedBlockingQueue
+ * works. Any number of producers and consumers may use the queue.
+ *
+ * How much is lost when the machine goes down is told by Durability. The journal is
+ * written through memory mappings, so whatever the durability, an item survives a
+ * crash of the process once put() returns; forcing is about the operating system
+ * going down. Forcing is done by group commit: a producer that needs the journal
+ * forced while no force is running becomes the leader, forces everything appended
+ * so far, and wakes the followers whose records that covered; a producer that needs
+ * it while a force is running waits for it, and for the next one if needed. The
+ * leader waits outside putLock, so other producers keep appending meanwhile, and the
+ * next force covers all of them at once. The consumer position is forced along with
+ * the journal, so after the machine goes down, items taken since the last force may
+ * be taken again.
+ *
+ * iterator() is not supported at this point.
+ *
+ * */
+
+public class JournalBlockingQueue<E> extends AbstractQueue<E> implements
+		BlockingQueue<E>, Closeable {
+
+	/* turns items into bytes and back */
+	public interface Codec<E> {
+
+		byte[] encode(E e);
+
+		E decode(byte[] data);
+	}
+
+	/* when put() forces the journal to disk */
+	public enum Durability {
+
+		/* never; the operating system writes the pages back when it decides */
+		NONE,
+
+		/*
+		 * every BATCH_SIZE puts, by the put that completes the batch; the puts
+		 * in between do not wait
+		 */
+		BATCH,
+
+		/* every put, which returns only once its item is on disk */
+		SYNC
+	}
+
+	/* number of puts per force with Durability.BATCH */
+	public static final int BATCH_SIZE = 1024;
+
+	/* default size of a segment file */
+	public static final int DEFAULT_SEGMENT_SIZE = 64 * 1024 * 1024;
+
+	/* length and CRC32 */
+	static final int RECORD_HEADER = 8;
+
+	/* length marking the end of a segment */
+	static final int END_OF_SEGMENT = -1;
+
+	/* name of the consumer position file */
+	static final String POSITION_FILE = "consumer.pos";
+
+	/* suffix of the segment files */
+	static final String SEGMENT_SUFFIX = ".seg";
+
+	/* layout of the position file */
+	static final int POSITION_MAGIC = 0;
+	static final int POSITION_SEGMENT_SIZE = 4;
+	static final int POSITION = 8;
+	static final int POSITION_LENGTH = 16;
+
+	/* tells a position file written by JournalBlockingQueue */
+	static final int MAGIC_NUMBER = 0x4a424c51;
+
+	/* A mapped segment file, with a view of it for each side. */
+
+	private static final class Segment {
+
+		final File file;
+		final MappedByteBuffer buffer;
+
+		/* used under putLock */
+		final ByteBuffer writer;
+
+		/* used under takeLock */
+		final ByteBuffer reader;
+
+		Segment(File file, MappedByteBuffer buffer) {
+			this.file = file;
+			this.buffer = buffer;
+			this.writer = buffer.duplicate();
+			this.reader = buffer.duplicate();
+		}
+	}
+
+	/* the journal directory */
+	private final File dir;
+
+	/* maximum number of items queued */
+	private final int capacity;
+
+	private final Codec<E> codec;
+
+	private final Durability durability;
+
+	/* size of a segment file */
+	private final int segmentSize;
+
+	/* the segments not yet deleted, by number */
+	private final ConcurrentSkipListMap<Long, Segment> segments;
+
+	/* the consumer position file */
+	private final MappedByteBuffer position;
+
+	/* current number of items */
+	private final AtomicInteger count;
+
+	/* held by put, offer */
+	private final ReentrantLock putLock;
+
+	/* wait queue for waiting puts */
+	private final Condition notFull;
+
+	/* held by take, poll, peek */
+	private final ReentrantLock takeLock;
+
+	/* wait queue for waiting takes */
+	private final Condition notEmpty;
+
+	/* held by the group commit */
+	private final ReentrantLock commitLock;
+
+	/* wait queue for followers of the group commit */
+	private final Condition committed;
+
+	/* position of the next append, guarded by putLock */
+	private long writePosition;
+
+	/* number of puts since the last forced batch, guarded by putLock */
+	private int unforced;
+
+	/* end of the appended records, written under putLock */
+	private volatile long written;
+
+	/* position of the next take, guarded by takeLock */
+	private long readPosition;
+
+	/* end of the records forced to disk, guarded by commitLock */
+	private long durable;
+
+	/* whether a leader is forcing, guarded by commitLock */
+	private boolean forcing;
+
+	/*
+	 * number of the segment forced last, which may have grown since; used by
+	 * the leader only
+	 */
+	private long forcedSegment;
+
+	public JournalBlockingQueue(File dir, int capacity, Codec<E> codec)
+			throws IOException {
+		this(dir, capacity, codec, Durability.NONE, DEFAULT_SEGMENT_SIZE);
+	}
+
+	public JournalBlockingQueue(File dir, int capacity, Codec<E> codec,
+			Durability durability) throws IOException {
+		this(dir, capacity, codec, durability, DEFAULT_SEGMENT_SIZE);
+	}
+
+	/*
+	 * Opens the journal in dir, creating it if there is none, and recovers the
+	 * items not taken yet. segmentSize only applies to a new journal; an
+	 * existing one keeps the size it was created with.
+	 */
+	public JournalBlockingQueue(File dir, int capacity, Codec<E> codec,
+			Durability durability, int segmentSize) throws IOException {
+
+		if (capacity <= 0 || segmentSize <= RECORD_HEADER) {
+			throw new IllegalArgumentException();
+		}
+
+		if (codec == null || durability == null) {
+			throw new NullPointerException();
+		}
+
+		if (!dir.isDirectory() && !dir.mkdirs()) {
+			throw new IOException("cannot create " + dir);
+		}
+
+		this.dir = dir;
+		this.capacity = capacity;
+		this.codec = codec;
+		this.durability = durability;
+		this.segments = new ConcurrentSkipListMap<Long, Segment>();
+		this.count = new AtomicInteger();
+		this.putLock = new ReentrantLock();
+		this.notFull = putLock.newCondition();
+		this.takeLock = new ReentrantLock();
+		this.notEmpty = takeLock.newCondition();
+		this.commitLock = new ReentrantLock();
+		this.committed = commitLock.newCondition();
+
+		File file = new File(dir, POSITION_FILE);
+		boolean exists = file.exists();
+		this.position = map(file, POSITION_LENGTH);
+
+		if (exists) {
+			if (position.getInt(POSITION_MAGIC) != MAGIC_NUMBER) {
+				throw new IOException("not a journal: " + dir);
+			}
+			this.segmentSize = position.getInt(POSITION_SEGMENT_SIZE);
+		} else {
+			this.segmentSize = segmentSize;
+			position.putInt(POSITION_SEGMENT_SIZE, segmentSize);
+			position.putLong(POSITION, 0);
+			position.putInt(POSITION_MAGIC, MAGIC_NUMBER);
+			position.force();
+		}
+
+		recover();
+	}
+
+	@Override
+	public void put(E e) throws InterruptedException {
+
+		byte[] data = encode(e);
+		long end;
+		boolean force;
+		int c;
+
+		final ReentrantLock putLock = this.putLock;
+		putLock.lockInterruptibly();
+		try {
+			while (count.get() >= capacity) {
+				notFull.await();
+			}
+			end = append(data);
+			force = needsForce();
+			c = count.getAndIncrement();
+			if (c + 1 < capacity) {
+				notFull.signal();
+			}
+		} finally {
+			putLock.unlock();
+		}
+
+		if (c == 0) {
+			signalNotEmpty();
+		}
+
+		if (force) {
+			commit(end);
+		}
+	}
+
+	@Override
+	public boolean offer(E e, long timeout, TimeUnit unit)
+			throws InterruptedException {
+
+		byte[] data = encode(e);
+		long nanos = unit.toNanos(timeout);
+		long end;
+		boolean force;
+		int c;
+
+		final ReentrantLock putLock = this.putLock;
+		putLock.lockInterruptibly();
+		try {
+			while (count.get() >= capacity) {
+				if (nanos <= 0) {
+					return false;
+				}
+				nanos = notFull.awaitNanos(nanos);
+			}
+			end = append(data);
+			force = needsForce();
+			c = count.getAndIncrement();
+			if (c + 1 < capacity) {
+				notFull.signal();
+			}
+		} finally {
+			putLock.unlock();
+		}
+
+		if (c == 0) {
+			signalNotEmpty();
+		}
+
+		if (force) {
+			commit(end);
+		}
+
+		return true;
+	}
+
+	@Override
+	public boolean offer(E e) {
+
+		byte[] data = encode(e);
+
+		if (count.get() >= capacity) {
+			return false;
+		}
+
+		long end;
+		boolean force;
+		int c;
+
+		final ReentrantLock putLock = this.putLock;
+		putLock.lock();
+		try {
+			if (count.get() >= capacity) {
+				return false;
+			}
+			end = append(data);
+			force = needsForce();
+			c = count.getAndIncrement();
+			if (c + 1 < capacity) {
+				notFull.signal();
+			}
+		} finally {
+			putLock.unlock();
+		}
+
+		if (c == 0) {
+			signalNotEmpty();
+		}
+
+		if (force) {
+			commit(end);
+		}
+
+		return true;
+	}
+
+	@Override
+	public E take() throws InterruptedException {
+
+		byte[] data;
+		int c;
+
+		final ReentrantLock takeLock = this.takeLock;
+		takeLock.lockInterruptibly();
+		try {
+			while (count.get() == 0) {
+				notEmpty.await();
+			}
+			data = read(true);
+			c = count.getAndDecrement();
+			if (c > 1) {
+				notEmpty.signal();
+			}
+		} finally {
+			takeLock.unlock();
+		}
+
+		if (c == capacity) {
+			signalNotFull();
+		}
+
+		return codec.decode(data);
+	}
+
+	@Override
+	public E poll(long timeout, TimeUnit unit) throws InterruptedException {
+
+		long nanos = unit.toNanos(timeout);
+		byte[] data;
+		int c;
+
+		final ReentrantLock takeLock = this.takeLock;
+		takeLock.lockInterruptibly();
+		try {
+			while (count.get() == 0) {
+				if (nanos <= 0) {
+					return null;
+				}
+				nanos = notEmpty.awaitNanos(nanos);
+			}
+			data = read(true);
+			c = count.getAndDecrement();
+			if (c > 1) {
+				notEmpty.signal();
+			}
+		} finally {
+			takeLock.unlock();
+		}
+
+		if (c == capacity) {
+			signalNotFull();
+		}
+
+		return codec.decode(data);
+	}
+
+	@Override
+	public E poll() {
+
+		if (count.get() == 0) {
+			return null;
+		}
+
+		byte[] data;
+		int c;
+
+		final ReentrantLock takeLock = this.takeLock;
+		takeLock.lock();
+		try {
+			if (count.get() == 0) {
+				return null;
+			}
+			data = read(true);
+			c = count.getAndDecrement();
+			if (c > 1) {
+				notEmpty.signal();
+			}
+		} finally {
+			takeLock.unlock();
+		}
+
+		if (c == capacity) {
+			signalNotFull();
+		}
+
+		return codec.decode(data);
+	}
+
+	@Override
+	public E peek() {
+
+		if (count.get() == 0) {
+			return null;
+		}
+
+		byte[] data;
+
+		final ReentrantLock takeLock = this.takeLock;
+		takeLock.lock();
+		try {
+			if (count.get() == 0) {
+				return null;
+			}
+			data = read(false);
+		} finally {
+			takeLock.unlock();
+		}
+
+		return codec.decode(data);
+	}
+
+	@Override
+	public int drainTo(Collection<? super E> c) {
+		return drainTo(c, Integer.MAX_VALUE);
+	}
+
+	@Override
+	public int drainTo(Collection<? super E> c, int maxElements) {
+
+		if (c == null) {
+			throw new NullPointerException();
+		}
+
+		if (c == this) {
+			throw new IllegalArgumentException();
+		}
+
+		int n = 0;
+		E e;
+
+		while (n < maxElements && (e = poll()) != null) {
+			c.add(e);
+			++n;
+		}
+
+		return n;
+	}
+
+	@Override
+	public int remainingCapacity() {
+		return Math.max(capacity - count.get(), 0);
+	}
+
+	@Override
+	public int size() {
+		return count.get();
+	}
+
+	@Override
+	public Iterator<E> iterator() {
+		throw new UnsupportedOperationException();
+	}
+
+	/* forces the journal and the consumer position to disk */
+
+	public void sync() {
+		commit(written);
+	}
+
+	/*
+	 * Forces everything to disk. The mappings are released when the queue is
+	 * garbage collected, so the queue must not be used after close().
+	 */
+
+	@Override
+	public void close() {
+
+		putLock.lock();
+		takeLock.lock();
+		try {
+			for (Segment segment : segments.values()) {
+				segment.buffer.force();
+			}
+			position.force();
+		} finally {
+			takeLock.unlock();
+			putLock.unlock();
+		}
+	}
+
+	/* Signals a waiting take. Called only from put/offer. */
+
+	private void signalNotEmpty() {
+
+		final ReentrantLock takeLock = this.takeLock;
+		takeLock.lock();
+		try {
+			notEmpty.signal();
+		} finally {
+			takeLock.unlock();
+		}
+	}
+
+	/* Signals a waiting put. Called only from take/poll. */
+
+	private void signalNotFull() {
+
+		final ReentrantLock putLock = this.putLock;
+		putLock.lock();
+		try {
+			notFull.signal();
+		} finally {
+			putLock.unlock();
+		}
+	}
+
+	private byte[] encode(E e) {
+
+		if (e == null) {
+			throw new NullPointerException();
+		}
+
+		byte[] data = codec.encode(e);
+		if (data.length > segmentSize - RECORD_HEADER) {
+			throw new IllegalArgumentException("item of " + data.length
+					+ " bytes, segment of " + segmentSize);
+		}
+
+		return data;
+	}
+
+	/*
+	 * Appends a record and returns the end of it. The length is written last,
+	 * so a record is either complete or not there. Called under putLock.
+	 */
+
+	private long append(byte[] data) {
+
+		int offset = offset(writePosition);
+		int length = RECORD_HEADER + data.length;
+
+		if (segmentSize - offset < length) {
+
+			/* not enough room, the record goes to the next segment */
+
+			if (segmentSize - offset >= 4) {
+				segment(writePosition).writer.putInt(offset, END_OF_SEGMENT);
+			}
+
+			writePosition = (number(writePosition) + 1) * segmentSize;
+			offset = 0;
+		}
+
+		Segment segment = segment(writePosition);
+		if (segment == null) {
+			segment = createSegment(number(writePosition));
+		}
+
+		ByteBuffer writer = segment.writer;
+		writer.position(offset + RECORD_HEADER);
+		writer.put(data);
+		writer.putInt(offset + 4, checksum(data));
+		writer.putInt(offset, data.length);
+
+		writePosition += length;
+		written = writePosition;
+
+		return writePosition;
+	}
+
+	/* whether the put that just appended has to force. Called under putLock. */
+
+	private boolean needsForce() {
+
+		switch (durability) {
+		case SYNC:
+			return true;
+		case BATCH:
+			if (++unforced < BATCH_SIZE) {
+				return false;
+			}
+			unforced = 0;
+			return true;
+		default:
+			return false;
+		}
+	}
+
+	/*
+	 * Reads the record at readPosition, and moves past it if take is set.
+	 * Called under takeLock, with at least one item queued.
+	 */
+
+	private byte[] read(boolean take) {
+
+		int offset = offset(readPosition);
+		Segment segment = segment(readPosition);
+
+		if (segmentSize - offset < RECORD_HEADER
+				|| segment.reader.getInt(offset) == END_OF_SEGMENT) {
+
+			/* the record is at the start of the next segment */
+
+			long next = (number(readPosition) + 1) * segmentSize;
+
+			if (!take) {
+				segment = segment(next);
+				offset = 0;
+			} else {
+				moveTo(next);
+				deleteSegment(segment);
+				segment = segment(next);
+				offset = 0;
+			}
+		}
+
+		ByteBuffer reader = segment.reader;
+		byte[] data = new byte[reader.getInt(offset)];
+		reader.position(offset + RECORD_HEADER);
+		reader.get(data);
+
+		if (take) {
+			moveTo(readPosition + RECORD_HEADER + data.length);
+
+			/*
+			 * a record that ends the segment exactly leaves no END_OF_SEGMENT
+			 * behind, so the segment is deleted here
+			 */
+
+			if (offset(readPosition) == 0) {
+				deleteSegment(segment);
+			}
+		}
+
+		return data;
+	}
+
+	/* sets and persists the consumer position. Called under takeLock. */
+
+	private void moveTo(long readPosition) {
+		this.readPosition = readPosition;
+		position.putLong(POSITION, readPosition);
+	}
+
+	/*
+	 * Forces the journal up to end, with the consumer position. Followers wait
+	 * for the leader; the leader forces whatever has been appended by then,
+	 * which covers every follower that got in meanwhile.
+	 */
+
+	private void commit(long end) {
+
+		final ReentrantLock commitLock = this.commitLock;
+		commitLock.lock();
+		try {
+			while (durable < end) {
+
+				if (forcing) {
+					committed.awaitUninterruptibly();
+					continue;
+				}
+
+				/* become the leader */
+
+				forcing = true;
+				long target = written;
+
+				commitLock.unlock();
+				try {
+					force(target);
+				} finally {
+					commitLock.lock();
+					forcing = false;
+					durable = Math.max(durable, target);
+					committed.signalAll();
+				}
+			}
+		} finally {
+			commitLock.unlock();
+		}
+	}
+
+	/*
+	 * Forces every segment from the one forced last to the one of end, as a
+	 * segment is left behind whenever a record does not fit or ends it
+	 * exactly, then the consumer position. Called by the leader only.
+	 */
+
+	private void force(long end) {
+
+		if (end > 0) {
+			long last = number(end - 1);
+			for (long n = forcedSegment; n <= last; ++n) {
+				forceSegment(n);
+			}
+			forcedSegment = last;
+		}
+
+		position.force();
+	}
+
+	/* forces a segment, unless the consumer has deleted it already */
+	void forceSegment(long number) {
+
+		Segment segment = segments.get(number);
+		if (segment != null) {
+			segment.buffer.force();
+		}
+	}
+
+	/*
+	 * Reads the journal from the consumer position, counting the items in it
+	 * and finding where the next record goes.
+	 */
+
+	private void recover() throws IOException {
+
+		File[] files = dir.listFiles();
+		long[] numbers = new long[files.length];
+		int n = 0;
+
+		for (File file : files) {
+			String name = file.getName();
+			if (name.endsWith(SEGMENT_SUFFIX)) {
+				try {
+					numbers[n++] = Long.parseLong(name.substring(0,
+							name.length() - SEGMENT_SUFFIX.length()));
+				} catch (NumberFormatException e) {
+					--n;
+				}
+			}
+		}
+
+		numbers = Arrays.copyOf(numbers, n);
+		Arrays.sort(numbers);
+
+		long start = position.getLong(POSITION);
+
+		/* segments the consumer was done with may be left over */
+
+		int first = 0;
+		while (first < n && numbers[first] < number(start)) {
+			new File(dir, name(numbers[first++])).delete();
+		}
+
+		if (first == n) {
+
+			/* nothing to recover */
+
+			start = n == 0 ? number(start) * segmentSize
+					: (numbers[n - 1] + 1) * segmentSize;
+			readPosition = start;
+			writePosition = start;
+			written = start;
+			durable = start;
+			forcedSegment = number(start);
+			position.putLong(POSITION, start);
+			return;
+		}
+
+		if (numbers[first] > number(start)) {
+			start = numbers[first] * segmentSize;
+		}
+
+		/* scan the consecutive segments from start */
+
+		long index = start;
+		int items = 0;
+		int i = first;
+
+		scan: for (; i < n && numbers[i] == number(index); ++i) {
+
+			Segment segment = openSegment(numbers[i]);
+			ByteBuffer reader = segment.reader;
+			int offset = offset(index);
+
+			while (true) {
+
+				if (segmentSize - offset < RECORD_HEADER) {
+					break;
+				}
+
+				int length = reader.getInt(offset);
+				if (length == END_OF_SEGMENT) {
+					break;
+				}
+
+				if (!isRecord(reader, offset)) {
+
+					/* the end of the journal, torn writes are discarded */
+
+					for (int j = offset; j < segmentSize; ++j) {
+						if (reader.get(j) != 0) {
+							segment.writer.put(j, (byte) 0);
+						}
+					}
+
+					index = numbers[i] * segmentSize + offset;
+					++i;
+					break scan;
+				}
+
+				offset += RECORD_HEADER + length;
+				index = numbers[i] * segmentSize + offset;
+				++items;
+			}
+
+			index = (numbers[i] + 1) * segmentSize;
+		}
+
+		/* anything after a gap or a torn record is not part of the journal */
+
+		for (; i < n; ++i) {
+			new File(dir, name(numbers[i])).delete();
+		}
+
+		readPosition = start;
+		writePosition = index;
+		written = index;
+		durable = index;
+		forcedSegment = number(start);
+		count.set(items);
+		position.putLong(POSITION, start);
+	}
+
+	/* whether the record at offset is complete and matches its CRC32 */
+
+	private boolean isRecord(ByteBuffer reader, int offset) {
+
+		int length = reader.getInt(offset);
+		if (length < 0 || length > segmentSize - offset - RECORD_HEADER) {
+			return false;
+		}
+
+		byte[] data = new byte[length];
+		reader.position(offset + RECORD_HEADER);
+		reader.get(data);
+
+		return reader.getInt(offset + 4) == checksum(data);
+	}
+
+	/*
+	 * CRC32 of the length and the bytes of an item. With the length in it,
+	 * zeroed space never passes for an empty item.
+	 */
+
+	private static int checksum(byte[] data) {
+
+		CRC32 crc = new CRC32();
+		crc.update(data.length >>> 24);
+		crc.update(data.length >>> 16);
+		crc.update(data.length >>> 8);
+		crc.update(data.length);
+		crc.update(data, 0, data.length);
+
+		return (int) crc.getValue();
+	}
+
+	private Segment segment(long position) {
+		return segments.get(number(position));
+	}
+
+	private Segment createSegment(long number) {
+		try {
+			return openSegment(number);
+		} catch (IOException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private Segment openSegment(long number) throws IOException {
+
+		File file = new File(dir, name(number));
+		Segment segment = new Segment(file, map(file, segmentSize));
+		segments.put(number, segment);
+
+		return segment;
+	}
+
+	/*
+	 * Deletes a segment the consumer is done with. The consumer position is
+	 * forced first, unless nothing is, so that a restart never starts from a
+	 * deleted segment.
+	 */
+
+	private void deleteSegment(Segment segment) {
+
+		if (durability != Durability.NONE) {
+			position.force();
+		}
+
+		segments.values().remove(segment);
+		segment.file.delete();
+	}
+
+	private long number(long position) {
+		return position / segmentSize;
+	}
+
+	private int offset(long position) {
+		return (int) (position % segmentSize);
+	}
+
+	private static String name(long number) {
+		return String.format("%020d%s", number, SEGMENT_SUFFIX);
+	}
+
+	/* maps a file of the given length, creating it zero-filled if needed */
+	private static MappedByteBuffer map(File file, int length)
+			throws IOException {
+
+		RandomAccessFile raf = new RandomAccessFile(file, "rw");
+		try {
+			if (raf.length() < length) {
+				raf.setLength(length);
+			}
+			return raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0,
+					length);
+		} finally {
+			raf.close();
+		}
+	}
+}
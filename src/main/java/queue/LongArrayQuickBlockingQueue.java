@@ -0,0 +1,236 @@
+package queue;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/* A single-producer-single-consumer bounded blocking queue of long values.
+ *
+ * == implementation ==
+ *
+ * LongArrayQuickBlockingQueue is to LongArrayQuickQueue what ArrayQuickBlockingQueue
+ * is to ArrayQuickQueue. When the queue is neither full nor empty, items are added
+ * and removed with no use of lock or CAS; put() blocks while the queue is full and
+ * take() blocks while it is empty, using the same lock-and-check-again scheme as
+ * ArrayQuickBlockingQueue.
+ *
+ * Every operation, the non-blocking and bulk ones included, publishes its index with
+ * a volatile store and then reads the other index to decide whether the other side
+ * has to be notified. So a consumer blocked in take() is woken by offer() as well as
+ * by put(), and a producer blocked in put() by poll() and bulk poll as well as by
+ * take().
+ *
+ * poll(timeout, unit) returns the missing value when it times out.
+ *
+ * */
+
+public class LongArrayQuickBlockingQueue extends LongArrayQuickQueue {
+
+	/* used for notification */
+	private final ReentrantLock lock;
+
+	/* used for notification */
+	private final Condition cond;
+
+	/* size is rounded up to a power of 2 */
+	public LongArrayQuickBlockingQueue(int size) {
+		this(size, Long.MIN_VALUE);
+	}
+
+	/* size is rounded up to a power of 2 */
+	public LongArrayQuickBlockingQueue(int size, long missingValue) {
+		super(size, missingValue);
+		this.lock = new ReentrantLock();
+		this.cond = lock.newCondition();
+	}
+
+	public void put(long e) throws InterruptedException {
+
+		if (e == missingValue) {
+			throw new IllegalArgumentException();
+		}
+
+		long index = putIndex.get();
+		awaitNotFull(index, false, 0);
+
+		items[(int) index & mask] = e;
+		publishPut(index, index + 1);
+	}
+
+	public boolean offer(long e, long timeout, TimeUnit unit)
+			throws InterruptedException {
+
+		if (e == missingValue) {
+			throw new IllegalArgumentException();
+		}
+
+		long index = putIndex.get();
+		if (!awaitNotFull(index, true, unit.toNanos(timeout))) {
+			return false;
+		}
+
+		items[(int) index & mask] = e;
+		publishPut(index, index + 1);
+
+		return true;
+	}
+
+	public long take() throws InterruptedException {
+
+		long index = takeIndex.get();
+		awaitNotEmpty(index, false, 0);
+
+		long e = items[(int) index & mask];
+		publishTake(index, index + 1);
+
+		return e;
+	}
+
+	/* the missing value is returned on timeout */
+
+	public long poll(long timeout, TimeUnit unit) throws InterruptedException {
+
+		long index = takeIndex.get();
+		if (!awaitNotEmpty(index, true, unit.toNanos(timeout))) {
+			return missingValue;
+		}
+
+		long e = items[(int) index & mask];
+		publishTake(index, index + 1);
+
+		return e;
+	}
+
+	public int remainingCapacity() {
+		return capacity - size();
+	}
+
+	/*
+	 * Producer only: waits until the slot at index is free. Returns false if
+	 * timed and the time ran out first.
+	 */
+
+	private boolean awaitNotFull(long index, boolean timed, long nanos)
+			throws InterruptedException {
+
+		final PaddedIndex putIndex = this.putIndex;
+
+		/* takeIndex is read only if our copy of it says the queue is full. */
+
+		while (index - putIndex.cache == capacity
+				&& index - (putIndex.cache = takeIndex.get()) == capacity) {
+
+			/*
+			 * If queue has been found full, we acquire the lock and check
+			 * again, as the consumer may have moved on in between.
+			 */
+
+			lock.lockInterruptibly();
+			try {
+				if (index - takeIndex.get() == capacity) {
+
+					if (!timed) {
+						cond.await();
+					} else if (nanos <= 0) {
+						return false;
+					} else {
+						nanos = cond.awaitNanos(nanos);
+					}
+				}
+			} finally {
+				lock.unlock();
+			}
+		}
+
+		return true;
+	}
+
+	/*
+	 * Consumer only: waits until the slot at index holds an item. Returns
+	 * false if timed and the time ran out first.
+	 */
+
+	private boolean awaitNotEmpty(long index, boolean timed, long nanos)
+			throws InterruptedException {
+
+		final PaddedIndex takeIndex = this.takeIndex;
+
+		/* putIndex is read only if our copy of it says the queue is empty. */
+
+		while (index == takeIndex.cache
+				&& index == (takeIndex.cache = putIndex.get())) {
+
+			/*
+			 * If queue has been found empty, we acquire the lock and check
+			 * again, as the producer may have moved on in between.
+			 */
+
+			lock.lockInterruptibly();
+			try {
+				if (index == putIndex.get()) {
+
+					if (!timed) {
+						cond.await();
+					} else if (nanos <= 0) {
+						return false;
+					} else {
+						nanos = cond.awaitNanos(nanos);
+					}
+				}
+			} finally {
+				lock.unlock();
+			}
+		}
+
+		return true;
+	}
+
+	/*
+	 * If the queue was empty, the consumer must be blocked if there is one.
+	 * The volatile store comes before the read of takeIndex, so that either
+	 * the consumer sees the new putIndex or we see that it is waiting.
+	 */
+
+	@Override
+	void publishPut(long oldIndex, long newIndex) {
+
+		final PaddedIndex putIndex = this.putIndex;
+		putIndex.set(newIndex);
+		putIndex.cache = takeIndex.get();
+
+		if (oldIndex == putIndex.cache) {
+			signal();
+		}
+	}
+
+	/*
+	 * If the queue was full, the producer must be blocked if there is one.
+	 * Same ordering as in publishPut().
+	 */
+
+	@Override
+	void publishTake(long oldIndex, long newIndex) {
+
+		final PaddedIndex takeIndex = this.takeIndex;
+		takeIndex.set(newIndex);
+		takeIndex.cache = putIndex.get();
+
+		if (takeIndex.cache - oldIndex >= capacity) {
+			signal();
+		}
+	}
+
+	/*
+	 * No need to check again under the lock, because there could be no more
+	 * than two threads, with one being ourselves.
+	 */
+
+	private void signal() {
+		lock.lock();
+		try {
+			cond.signal();
+		} finally {
+			lock.unlock();
+		}
+	}
+}
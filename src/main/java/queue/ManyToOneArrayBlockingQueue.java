@@ -0,0 +1,170 @@
+package queue;
+
+import java.util.Collection;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+/* A multiple-producer-single-consumer bounded blocking queue.
+ *
+ * == implementation ==
+ *
+ * ManyToOneArrayBlockingQueue is to ManyToOneArrayQueue what ArrayQuickBlockingQueue
+ * is to ArrayQuickQueue. When the queue is neither full nor empty, items are added
+ * with the CAS of ManyToOneArrayQueue and removed with no use of lock or CAS; how
+ * put() and take() wait is up to the WaitStrategy given to the constructor.
+ *
+ * The producers publish their items, and the consumer its index, with volatile
+ * rather than ordered stores, and call signal() on the strategy after each of them,
+ * as the WaitStrategy contract asks. bulk poll(), drain() and drainTo() signal once
+ * per batch.
+ *
+ * Any number of producers may wait when the queue is full, so the strategy must let
+ * several threads wait at once. BlockingWaitStrategy, the default, and the spinning
+ * strategies do; ParkingWaitStrategy parks one of them at a time, and lets the
+ * others yield.
+ *
+ * */
+
+public class ManyToOneArrayBlockingQueue<E> extends ManyToOneArrayQueue<E>
+		implements BlockingQueue<E> {
+
+	/* how put() and take() wait, and are woken up */
+	private final WaitStrategy waitStrategy;
+
+	/* what take() waits for: the slot at takeIndex has its item */
+	private final BooleanSupplier notEmpty;
+
+	/* what put() waits for */
+	private final BooleanSupplier notFull;
+
+	/*
+	 * size is rounded up to a power of 2. put() and take() block on a lock
+	 * when they have to wait.
+	 */
+	public ManyToOneArrayBlockingQueue(int size) {
+		this(size, new BlockingWaitStrategy());
+	}
+
+	/*
+	 * size is rounded up to a power of 2. waitStrategy must not be used by
+	 * another queue.
+	 */
+	public ManyToOneArrayBlockingQueue(int size, WaitStrategy waitStrategy) {
+
+		super(size);
+
+		if (waitStrategy == null) {
+			throw new NullPointerException();
+		}
+
+		this.waitStrategy = waitStrategy;
+		this.notEmpty = () -> items.get((int) takeIndex.get() & mask) != null;
+		this.notFull = () -> putIndex.get() - takeIndex.get() < capacity;
+	}
+
+	/* any producer */
+
+	@Override
+	public void put(E e) throws InterruptedException {
+
+		while (!offer(e)) {
+			waitStrategy.await(notFull);
+		}
+	}
+
+	/* any producer */
+
+	@Override
+	public boolean offer(E e, long timeout, TimeUnit unit)
+			throws InterruptedException {
+
+		long nanos = unit.toNanos(timeout);
+		long deadline = System.nanoTime() + nanos;
+
+		while (!offer(e)) {
+
+			/* another producer may take the slot we waited for */
+
+			if (!waitStrategy.await(notFull, nanos)) {
+				return false;
+			}
+			nanos = deadline - System.nanoTime();
+		}
+
+		return true;
+	}
+
+	/* the consumer */
+
+	@Override
+	public E take() throws InterruptedException {
+
+		E e;
+
+		while ((e = poll()) == null) {
+			waitStrategy.await(notEmpty);
+		}
+
+		return e;
+	}
+
+	/* the consumer */
+
+	@Override
+	public E poll(long timeout, TimeUnit unit) throws InterruptedException {
+
+		E e = poll();
+
+		if (e == null && waitStrategy.await(notEmpty, unit.toNanos(timeout))) {
+			e = poll();
+		}
+
+		return e;
+	}
+
+	@Override
+	public int drainTo(Collection<? super E> c) {
+		return drainTo(c, Integer.MAX_VALUE);
+	}
+
+	/* the consumer */
+
+	@Override
+	public int drainTo(Collection<? super E> c, int maxElements) {
+
+		if (c == null) {
+			throw new NullPointerException();
+		}
+
+		if (c == this) {
+			throw new IllegalArgumentException();
+		}
+
+		return drain(c::add, Math.max(maxElements, 0));
+	}
+
+	@Override
+	public int remainingCapacity() {
+		return capacity - size();
+	}
+
+	/*
+	 * The consumer may be waiting for the item. The volatile store comes
+	 * before signal(), see WaitStrategy.
+	 */
+
+	@Override
+	void publishItem(int slot, E e) {
+		items.set(slot, e);
+		waitStrategy.signal();
+	}
+
+	/* Producers may be waiting for the slots. Same as publishItem(). */
+
+	@Override
+	void publishTake(long index) {
+		takeIndex.set(index);
+		waitStrategy.signal();
+	}
+}
@@ -0,0 +1,230 @@
+package queue;
+
+import java.util.AbstractQueue;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Consumer;
+
+/* A multiple-producer-single-consumer bounded queue.
+ *
+ * == implementation ==
+ *
+ * Any number of producers, and a single consumer, such as the thread reading the
+ * mailbox of an actor. ConcurrentArrayQueue would make the consumer CAS against
+ * other consumers that do not exist; here only the producers CAS.
+ *
+ * A producer claims an index with a CAS of putIndex from index to index + 1, then
+ * writes its item into the slot with an ordered store. The item itself tells the
+ * consumer that the slot is full: null is an empty slot. A producer may have claimed
+ * an index and not yet written its item, in which case the consumer finds the slot
+ * empty while putIndex is past it, and waits for the item, which is a wait for a
+ * producer in the middle of a few instructions.
+ *
+ * The consumer is the only writer of takeIndex. It empties the slot, and publishes
+ * takeIndex with an ordered store, as in ArrayQuickQueue, so no CAS is used on its
+ * side. A producer may claim an index only once the consumer has emptied the slot
+ * a lap before, i.e. if index - takeIndex < capacity. To keep producers off the
+ * consumer's cache line, they share producerLimit, the last takeIndex + capacity
+ * seen, and read takeIndex only when index reaches it. A producer may overwrite a
+ * newer limit with an older one, which is lower, so that takeIndex is just read
+ * again.
+ *
+ * Bulk poll() and drain() remove a batch with a single publication of takeIndex,
+ * as in ArrayQuickQueue.
+ *
+ * publishItem() and publishTake() are the hooks ManyToOneArrayBlockingQueue adds its
+ * signals to.
+ *
+ * peek() and iterator() are not supported at this point.
+ *
+ * */
+
+public class ManyToOneArrayQueue<E> extends AbstractQueue<E> implements
+		Queue<E> {
+
+	/* maximum number of items queued, a power of 2 */
+	final int capacity;
+
+	/* capacity - 1, maps an index onto items */
+	final int mask;
+
+	/* queued items, null in an empty slot */
+	final AtomicReferenceArray<E> items;
+
+	/* item index for next poll, written by the consumer only */
+	final PaddedIndex takeIndex;
+
+	/* item index for next offer, claimed by producers with a CAS */
+	final PaddedIndex putIndex;
+
+	/* takeIndex + capacity, as last seen by a producer */
+	final PaddedIndex producerLimit;
+
+	/* size is rounded up to a power of 2 */
+	public ManyToOneArrayQueue(int size) {
+		this.capacity = Pow2.roundToPowerOfTwo(size);
+		this.mask = capacity - 1;
+		this.items = new AtomicReferenceArray<E>(capacity);
+		this.takeIndex = new PaddedIndex(0);
+		this.putIndex = new PaddedIndex(0);
+		this.producerLimit = new PaddedIndex(capacity);
+	}
+
+	/* any producer: instant add if possible; otherwise false is returned. */
+
+	@Override
+	public boolean offer(E e) {
+
+		if (e == null) {
+			throw new NullPointerException();
+		}
+
+		final PaddedIndex putIndex = this.putIndex;
+		long index;
+
+		do {
+			index = putIndex.get();
+
+			if (index >= producerLimit.get()) {
+
+				/* looks full, refresh limit from takeIndex and check again. */
+
+				long newLimit = takeIndex.get() + capacity;
+				if (index >= newLimit) {
+					return false;
+				}
+				producerLimit.lazySet(newLimit);
+			}
+
+		} while (!putIndex.compareAndSet(index, index + 1));
+
+		publishItem((int) index & mask, e);
+
+		return true;
+	}
+
+	/* the consumer: instant remove if possible; otherwise null is returned. */
+
+	@Override
+	public E poll() {
+
+		final PaddedIndex takeIndex = this.takeIndex;
+		long index = takeIndex.get();
+		int slot = (int) index & mask;
+		E e = items.get(slot);
+
+		if (e == null) {
+
+			if (index == putIndex.get()) {
+				return null;
+			}
+
+			/* claimed, the item is on its way */
+
+			while ((e = items.get(slot)) == null) {
+				Thread.yield();
+			}
+		}
+
+		items.lazySet(slot, null);
+		publishTake(index + 1);
+
+		return e;
+	}
+
+	/*
+	 * The consumer: removes up to max items into dst, starting at off, and
+	 * returns the number of items removed. Stops at the first slot not written
+	 * yet. takeIndex is published once for the whole batch.
+	 */
+
+	public int poll(E[] dst, int off, int max) {
+
+		if (off < 0 || max < 0 || max > dst.length - off) {
+			throw new IndexOutOfBoundsException();
+		}
+
+		final PaddedIndex takeIndex = this.takeIndex;
+		long index = takeIndex.get();
+		int n = 0;
+		E e;
+
+		while (n < max && (e = items.get((int) (index + n) & mask)) != null) {
+			items.lazySet((int) (index + n) & mask, null);
+			dst[off + n] = e;
+			++n;
+		}
+
+		if (n > 0) {
+			publishTake(index + n);
+		}
+
+		return n;
+	}
+
+	/*
+	 * The consumer: hands up to limit items to consumer, in order, and returns
+	 * the number of items handed over. Stops at the first slot not written
+	 * yet. takeIndex is published once, after the last item.
+	 *
+	 * If consumer throws, the item it was given counts as removed, and the
+	 * items before it are published before the exception propagates.
+	 */
+
+	public int drain(Consumer<? super E> consumer, int limit) {
+
+		if (limit < 0) {
+			throw new IllegalArgumentException();
+		}
+
+		final PaddedIndex takeIndex = this.takeIndex;
+		long index = takeIndex.get();
+		int n = 0;
+
+		try {
+			E e;
+			while (n < limit
+					&& (e = items.get((int) (index + n) & mask)) != null) {
+				items.lazySet((int) (index + n) & mask, null);
+				++n;
+				consumer.accept(e);
+			}
+		} finally {
+			if (n > 0) {
+				publishTake(index + n);
+			}
+		}
+
+		return n;
+	}
+
+	@Override
+	public E peek() {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public Iterator<E> iterator() {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public int size() {
+
+		/* same as ArrayQuickQueue.size() */
+
+		long take = takeIndex.get();
+		return (int) Math.min(putIndex.get() - take, capacity);
+	}
+
+	/* makes the item of a claimed slot visible to the consumer */
+	void publishItem(int slot, E e) {
+		items.lazySet(slot, e);
+	}
+
+	/* makes the slots before index visible to producers as free */
+	void publishTake(long index) {
+		takeIndex.lazySet(index);
+	}
+}
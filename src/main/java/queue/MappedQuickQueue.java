@@ -0,0 +1,115 @@
+package queue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/* A single-producer-single-consumer bounded queue of variable-length messages,
+ * shared between processes through a memory-mapped file.
+ *
+ * == implementation ==
+ *
+ * MappedQuickQueue is a ByteBufferQuickQueue whose buffer is a MappedByteBuffer
+ * over a file, so the header with putIndex and takeIndex, and the ring, are in
+ * the file. One process creates the file and another attaches to it; each maps
+ * it on its own, and the two mappings share the same physical pages. Adding and
+ * removing a message is then the same as within a single JVM: plain stores and
+ * loads, and an ordered store to publish an index, with no system call.
+ *
+ * The file keeps the queue, so a process attaching later finds the messages left
+ * by the other one, and either side may detach and attach again. Only one
+ * producer and one consumer may use the file at a time.
+ *
+ * The line of the header after the consumer fields holds a magic number and the
+ * size of the ring. create() writes the magic number last, with an ordered store,
+ * and attach() checks it. A file in a memory file system such as /dev/shm keeps
+ * the pages from being written back to disk.
+ *
+ * */
+
+public class MappedQuickQueue extends ByteBufferQuickQueue {
+
+	/* header offsets of the file fields */
+	static final int MAGIC = TAKE_INDEX + LINE;
+	static final int CAPACITY = MAGIC + 4;
+
+	/* tells a file created by MappedQuickQueue */
+	static final int MAGIC_NUMBER = 0x51534d51;
+
+	private final File file;
+
+	private MappedQuickQueue(File file, MappedByteBuffer region) {
+		super(region);
+		this.file = file;
+	}
+
+	/*
+	 * Creates the file, or truncates it if it exists, and maps a queue whose
+	 * ring is size rounded up to a power of 2.
+	 */
+
+	public static MappedQuickQueue create(File file, int size)
+			throws IOException {
+
+		int capacity = ringCapacity(size);
+		MappedByteBuffer region;
+
+		RandomAccessFile raf = new RandomAccessFile(file, "rw");
+		try {
+
+			/* a fresh file is zero-filled, so the indexes start at 0 */
+
+			raf.setLength(0);
+			raf.setLength(HEADER_LENGTH + capacity);
+			region = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0,
+					HEADER_LENGTH + capacity);
+		} finally {
+			raf.close();
+		}
+
+		slice(region, 0, HEADER_LENGTH).putInt(CAPACITY, capacity);
+		UnsafeAccess.putOrderedInt(UnsafeAccess.address(region) + MAGIC,
+				MAGIC_NUMBER);
+
+		return new MappedQuickQueue(file, region);
+	}
+
+	/* maps a queue created by create(), possibly by another process */
+
+	public static MappedQuickQueue attach(File file) throws IOException {
+
+		MappedByteBuffer region;
+
+		RandomAccessFile raf = new RandomAccessFile(file, "rw");
+		try {
+
+			long length = raf.length();
+			if (length < HEADER_LENGTH + MIN_CAPACITY
+					|| length > HEADER_LENGTH + Pow2.MAX_POW2) {
+				throw new IOException("not a queue: " + file);
+			}
+
+			region = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0,
+					length);
+		} finally {
+			raf.close();
+		}
+
+		long address = UnsafeAccess.address(region);
+		ByteBuffer header = slice(region, 0, HEADER_LENGTH);
+
+		if (UnsafeAccess.getIntVolatile(address + MAGIC) != MAGIC_NUMBER
+				|| header.getInt(CAPACITY) != region.capacity() - HEADER_LENGTH) {
+			throw new IOException("not a queue: " + file);
+		}
+
+		return new MappedQuickQueue(file, region);
+	}
+
+	public File file() {
+		return file;
+	}
+}
@@ -0,0 +1,212 @@
+package queue;
+
+import java.util.AbstractQueue;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/* A single-producer-multiple-consumer bounded queue.
+ *
+ * == implementation ==
+ *
+ * A single producer, such as a dispatcher thread, and any number of consumers, such
+ * as a pool of workers. ConcurrentArrayQueue would make the producer CAS against
+ * other producers that do not exist; here only the consumers CAS.
+ *
+ * The producer is the only writer of putIndex. As in ArrayQuickQueue, it keeps a
+ * copy of takeIndex in putIndex.cache, and writes the item and publishes putIndex
+ * with ordered stores, so no CAS is used on its side.
+ *
+ * A consumer claims an index with a CAS of takeIndex from index to index + 1, then
+ * reads the item and empties the slot with an ordered store. As takeIndex moves
+ * before the slot is emptied, the producer also checks that the slot it is about to
+ * write is empty; if a consumer is still reading it, the queue is full for the
+ * moment.
+ *
+ * To keep consumers off the producer's cache line, they share consumerLimit, the
+ * last putIndex seen, and read putIndex only when index reaches it. A consumer may
+ * overwrite a newer limit with an older one, which is lower, so that putIndex is
+ * just read again.
+ *
+ * Bulk poll() claims a run of up to max items with a single CAS of takeIndex, so
+ * that a worker taking K items at a time contends on takeIndex once per K items.
+ *
+ * peek() and iterator() are not supported at this point.
+ *
+ * */
+
+public class OneToManyArrayQueue<E> extends AbstractQueue<E> implements
+		Queue<E> {
+
+	/* maximum number of items queued, a power of 2 */
+	private final int capacity;
+
+	/* capacity - 1, maps an index onto items */
+	private final int mask;
+
+	/* queued items, null in an empty slot */
+	private final AtomicReferenceArray<E> items;
+
+	/* item index for next poll, claimed by consumers with a CAS */
+	private final PaddedIndex takeIndex;
+
+	/*
+	 * item index for next offer, with the producer's copy of takeIndex in
+	 * putIndex.cache
+	 */
+	private final PaddedIndex putIndex;
+
+	/* putIndex, as last seen by a consumer */
+	private final PaddedIndex consumerLimit;
+
+	/* size is rounded up to a power of 2 */
+	public OneToManyArrayQueue(int size) {
+		this.capacity = Pow2.roundToPowerOfTwo(size);
+		this.mask = capacity - 1;
+		this.items = new AtomicReferenceArray<E>(capacity);
+		this.takeIndex = new PaddedIndex(0);
+		this.putIndex = new PaddedIndex(0);
+		this.consumerLimit = new PaddedIndex(0);
+	}
+
+	/* the producer: instant add if possible; otherwise false is returned. */
+
+	@Override
+	public boolean offer(E e) {
+
+		if (e == null) {
+			throw new NullPointerException();
+		}
+
+		final PaddedIndex putIndex = this.putIndex;
+		long index = putIndex.get();
+
+		if (index - putIndex.cache == capacity) {
+
+			/* looks full, refresh the copy from takeIndex and check again. */
+
+			putIndex.cache = takeIndex.get();
+			if (index - putIndex.cache == capacity) {
+				return false;
+			}
+		}
+
+		int slot = (int) index & mask;
+
+		/* the consumer of the previous lap may still be reading the slot */
+
+		if (items.get(slot) != null) {
+			return false;
+		}
+
+		/* order has to be maintained. */
+
+		items.lazySet(slot, e);
+		putIndex.lazySet(index + 1);
+
+		return true;
+	}
+
+	/* any consumer: instant remove if possible; otherwise null is returned. */
+
+	@Override
+	public E poll() {
+
+		final PaddedIndex takeIndex = this.takeIndex;
+
+		while (true) {
+
+			long index = takeIndex.get();
+
+			if (available(index, 1) == 0) {
+				return null;
+			}
+
+			if (takeIndex.compareAndSet(index, index + 1)) {
+
+				int slot = (int) index & mask;
+				E e = items.get(slot);
+				items.lazySet(slot, null);
+
+				return e;
+			}
+		}
+	}
+
+	/*
+	 * Any consumer: removes up to max items into dst, starting at off, and
+	 * returns the number of items removed. The items are claimed with a single
+	 * CAS of takeIndex.
+	 */
+
+	public int poll(E[] dst, int off, int max) {
+
+		if (off < 0 || max < 0 || max > dst.length - off) {
+			throw new IndexOutOfBoundsException();
+		}
+
+		final PaddedIndex takeIndex = this.takeIndex;
+
+		while (true) {
+
+			long index = takeIndex.get();
+			int n = available(index, max);
+
+			if (n == 0) {
+				return 0;
+			}
+
+			if (takeIndex.compareAndSet(index, index + n)) {
+
+				for (int i = 0; i < n; ++i) {
+					int slot = (int) (index + i) & mask;
+					dst[off + i] = items.get(slot);
+					items.lazySet(slot, null);
+				}
+
+				return n;
+			}
+		}
+	}
+
+	/*
+	 * Any consumer: number of items queued from index, up to max. putIndex is
+	 * read only if consumerLimit cannot grant max.
+	 */
+
+	private int available(long index, int max) {
+
+		long available = consumerLimit.get() - index;
+
+		if (available < max) {
+			long limit = putIndex.get();
+			consumerLimit.lazySet(limit);
+			available = limit - index;
+		}
+
+		return (int) Math.max(0, Math.min(available, max));
+	}
+
+	@Override
+	public E peek() {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public Iterator<E> iterator() {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public int size() {
+
+		/*
+		 * same as ArrayQuickQueue.size(), with any number of consumers moving
+		 * on before putIndex is read
+		 */
+
+		long take = takeIndex.get();
+		return (int) Math.min(putIndex.get() - take, capacity);
+	}
+
+}
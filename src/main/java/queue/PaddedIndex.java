@@ -0,0 +1,82 @@
+package queue;
+
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+
+/*
+ * Padding in front of the index.
+ *
+ * The JVM lays out the fields of a superclass before those of a subclass, so
+ * the padding is declared in a class of its own.
+ * */
+
+abstract class PaddedIndexLhs {
+	long p01, p02, p03, p04, p05, p06, p07;
+}
+
+/* The hot fields. */
+
+abstract class PaddedIndexValue extends PaddedIndexLhs {
+
+	/* the index itself */
+	volatile long value;
+
+	/*
+	 * A plain field for the owner of the index. The single-producer and
+	 * single-consumer queues keep their copy of the other side's index here,
+	 * so that it shares the cache line with the owner's own index.
+	 */
+	long cache;
+}
+
+/*
+ * A queue index padded on both sides, so that it gets a cache line of its own.
+ *
+ * When putIndex and takeIndex are plain fields of the queue, they are laid out
+ * next to each other and next to the read-only fields, and every store by the
+ * producer invalidates the line the consumer is reading (false sharing), and
+ * vice versa. Holding each index in its own PaddedIndex puts at least 64 bytes
+ * between the index and anything else on the heap, so that the producer's line,
+ * the consumer's line and the read-only fields of the queue stay apart.
+ *
+ * The index is a 64-bit sequence that only grows; it never wraps in practice.
+ * Queues map it onto their array with a mask.
+ *
+ * The ordering operations mirror java.util.concurrent.atomic.AtomicLong.
+ *
+ * */
+
+final class PaddedIndex extends PaddedIndexValue {
+
+	long p11, p12, p13, p14, p15, p16, p17, p18;
+
+	private static final AtomicLongFieldUpdater<PaddedIndexValue> valueUpdater = AtomicLongFieldUpdater
+			.newUpdater(PaddedIndexValue.class, "value");
+
+	PaddedIndex(long value) {
+		this.value = value;
+	}
+
+	/* volatile load */
+	long get() {
+		return value;
+	}
+
+	/* volatile store */
+	void set(long value) {
+		this.value = value;
+	}
+
+	/* ordered store, for an index with a single writer */
+	void lazySet(long value) {
+		valueUpdater.lazySet(this, value);
+	}
+
+	boolean compareAndSet(long expect, long update) {
+		return valueUpdater.compareAndSet(this, expect, update);
+	}
+
+	/* atomic add, for an index claimed by fetch-and-add */
+	long getAndAdd(long delta) {
+		return valueUpdater.getAndAdd(this, delta);
+	}
+}
@@ -0,0 +1,99 @@
+package queue;
+
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.BooleanSupplier;
+
+/*
+ * Parks the waiting thread with LockSupport, and signal() unparks that very
+ * thread. There is no lock and no condition: the waiting thread is the whole
+ * state, which is all a single-producer-single-consumer queue needs, as only
+ * one side can be blocked at a time. Parking is cheap for a virtual thread,
+ * which just gets off its carrier thread.
+ *
+ * A waiting thread puts itself in waiter before the check, see WaitStrategy.
+ * signal() takes it out with a CAS and unparks it, so that a thread is unparked
+ * once however many changes are made before it is running again; it puts itself
+ * back before checking again. On its way out, a thread takes itself out only if
+ * it is still there.
+ *
+ * The other side may find waiter taken for a moment, when it starts waiting just
+ * as the queue changes under it. It then yields until the check succeeds or
+ * waiter is free.
+ *
+ * */
+
+public final class ParkingWaitStrategy implements WaitStrategy {
+
+	private static final AtomicReferenceFieldUpdater<ParkingWaitStrategy, Thread> waiterUpdater = AtomicReferenceFieldUpdater
+			.newUpdater(ParkingWaitStrategy.class, Thread.class, "waiter");
+
+	/* the thread waiting and not yet signalled */
+	private volatile Thread waiter;
+
+	@Override
+	public void await(BooleanSupplier ready) throws InterruptedException {
+		await(ready, false, 0);
+	}
+
+	@Override
+	public boolean await(BooleanSupplier ready, long nanos)
+			throws InterruptedException {
+		return await(ready, true, nanos);
+	}
+
+	private boolean await(BooleanSupplier ready, boolean timed, long nanos)
+			throws InterruptedException {
+
+		final Thread current = Thread.currentThread();
+		long deadline = timed ? System.nanoTime() + nanos : 0;
+
+		try {
+			while (true) {
+
+				/* in waiter before the check, see WaitStrategy */
+
+				boolean parking = waiter == current
+						|| waiterUpdater.compareAndSet(this, null, current);
+
+				if (ready.getAsBoolean()) {
+					return true;
+				}
+
+				if (Thread.interrupted()) {
+					throw new InterruptedException();
+				}
+
+				if (timed) {
+					nanos = deadline - System.nanoTime();
+					if (nanos <= 0) {
+						return false;
+					}
+				}
+
+				if (!parking) {
+
+					/* somebody else waits, for a moment only */
+
+					Thread.yield();
+				} else if (timed) {
+					LockSupport.parkNanos(this, nanos);
+				} else {
+					LockSupport.park(this);
+				}
+			}
+		} finally {
+			waiterUpdater.compareAndSet(this, current, null);
+		}
+	}
+
+	@Override
+	public void signal() {
+
+		Thread waiter = this.waiter;
+
+		if (waiter != null && waiterUpdater.compareAndSet(this, waiter, null)) {
+			LockSupport.unpark(waiter);
+		}
+	}
+}
@@ -0,0 +1,22 @@
+package queue;
+
+/* Power of 2 capacities, so that a sequence maps onto an array with a mask. */
+
+final class Pow2 {
+
+	/* largest power of 2 an int can hold */
+	static final int MAX_POW2 = 1 << 30;
+
+	private Pow2() {
+	}
+
+	/* smallest power of 2 not less than size */
+	static int roundToPowerOfTwo(int size) {
+
+		if (size <= 0 || size > MAX_POW2) {
+			throw new IllegalArgumentException("size: " + size);
+		}
+
+		return 1 << (32 - Integer.numberOfLeadingZeros(size - 1));
+	}
+}
@@ -0,0 +1,246 @@
+package queue;
+
+import java.util.AbstractQueue;
+import java.util.Iterator;
+import java.util.Queue;
+
+/* A single-producer-single-consumer queue bounded by a minimum and a maximum
+ * capacity, which grows and shrinks its array as it goes.
+ *
+ * == implementation ==
+ *
+ * ArrayQuickQueue needs its size up front: too small and the producer stalls, too
+ * large and the array is wasted for as long as the queue lives. ResizableArrayQuickQueue
+ * starts with an array of minCapacity items, doubles it when it fills up, up to
+ * maxCapacity, and halves it after a sustained period of low occupancy, down to
+ * minCapacity. Neither side ever waits for the other to resize.
+ *
+ * putIndex and takeIndex are the same 64-bit sequences as in ArrayQuickQueue, with
+ * the same private copies and ordered stores; they do not care about the array an
+ * item lands in. Each array is a Ring, and only the producer resizes: it allocates
+ * the new ring, writes the item into it, links it as next of the current ring, and
+ * writes JUMP in the slot of the current ring the item would have taken, before
+ * putIndex is published as usual. The consumer, finding JUMP in the slot of index,
+ * moves on to the next ring and reads index there. Items written to the old ring
+ * before the jump are all taken from the old ring first, so FIFO holds, and the old
+ * ring is garbage once the consumer has left it.
+ *
+ * The producer grows the ring when a single free slot is left, which it uses for
+ * JUMP, so that a ring below maxCapacity never fills up. Once per lap of the ring,
+ * the producer refreshes its copy of takeIndex and counts the lap as quiet if at
+ * most a quarter of the ring is used. After QUIET_LAPS quiet laps in a row, the
+ * ring is halved. Growing at full and shrinking at a quarter, and only after a
+ * while, keeps a queue at the edge from resizing back and forth. As the producer
+ * drives it, an idle queue keeps its size until traffic comes back.
+ *
+ * The full check counts the items left in the old ring against the capacity of the
+ * new one, which is conservative: a ring is halved only when at most a quarter of it
+ * is used, so the items left fit in half of the new one.
+ *
+ * peek() and iterator() are not supported at this point.
+ *
+ * */
+
+public class ResizableArrayQuickQueue<E> extends AbstractQueue<E> implements
+		Queue<E> {
+
+	/* marks the slot where the consumer moves on to the next ring */
+	private static final Object JUMP = new Object();
+
+	/* number of quiet laps in a row before the ring is halved */
+	static final int QUIET_LAPS = 4;
+
+	/* a power of 2 array of items, and the ring that follows it */
+	private static final class Ring {
+
+		/* queued items, or JUMP */
+		final Object[] items;
+
+		/* capacity - 1, maps an index onto items */
+		final int mask;
+
+		/*
+		 * written by the producer before JUMP, read by the consumer after it,
+		 * so that putIndex publishes it
+		 */
+		Ring next;
+
+		Ring(int capacity) {
+			this.items = new Object[capacity];
+			this.mask = capacity - 1;
+		}
+	}
+
+	/* minimum number of items the ring holds, a power of 2 */
+	private final int minCapacity;
+
+	/* maximum number of items queued, a power of 2 */
+	private final int maxCapacity;
+
+	/*
+	 * item index for next poll and remove, with the consumer's copy of
+	 * putIndex in takeIndex.cache
+	 */
+	private final PaddedIndex takeIndex;
+
+	/*
+	 * item index for next offer and add, with the producer's copy of
+	 * takeIndex in putIndex.cache
+	 */
+	private final PaddedIndex putIndex;
+
+	/* the ring the producer writes to, only written by the producer */
+	private Ring producerRing;
+
+	/* number of quiet laps in a row, only used by the producer */
+	private int quietLaps;
+
+	/* the ring the consumer reads from, only used by the consumer */
+	private Ring consumerRing;
+
+	/* minSize and maxSize are rounded up to a power of 2 */
+	public ResizableArrayQuickQueue(int minSize, int maxSize) {
+
+		this.minCapacity = Pow2.roundToPowerOfTwo(minSize);
+		this.maxCapacity = Pow2.roundToPowerOfTwo(maxSize);
+
+		if (minCapacity > maxCapacity) {
+			throw new IllegalArgumentException("minSize: " + minSize
+					+ " maxSize: " + maxSize);
+		}
+
+		this.takeIndex = new PaddedIndex(0);
+		this.putIndex = new PaddedIndex(0);
+		this.producerRing = new Ring(minCapacity);
+		this.consumerRing = producerRing;
+	}
+
+	@Override
+	public boolean offer(E e) {
+
+		if (e == null) {
+			throw new NullPointerException();
+		}
+
+		final PaddedIndex putIndex = this.putIndex;
+		final Ring ring = producerRing;
+		long index = putIndex.get();
+		int capacity = ring.mask + 1;
+
+		if (index - putIndex.cache >= capacity - 1) {
+
+			/*
+			 * looks full, or about to be, refresh the copy from takeIndex and
+			 * check again.
+			 */
+
+			putIndex.cache = takeIndex.get();
+			long size = index - putIndex.cache;
+
+			if (size == capacity - 1 && capacity < maxCapacity) {
+				resize(ring, index, capacity << 1, e);
+				return true;
+			}
+
+			if (size == capacity) {
+				return false;
+			}
+
+		} else if (((int) index & ring.mask) == 0 && capacity > minCapacity) {
+
+			/* once per lap: count quiet laps */
+
+			putIndex.cache = takeIndex.get();
+
+			if (index - putIndex.cache > capacity >> 2) {
+				quietLaps = 0;
+			} else if (++quietLaps == QUIET_LAPS) {
+				resize(ring, index, capacity >> 1, e);
+				return true;
+			}
+		}
+
+		/* order has to be maintained. */
+
+		ring.items[(int) index & ring.mask] = e;
+		putIndex.lazySet(index + 1);
+
+		return true;
+	}
+
+	@Override
+	public E peek() {
+		throw new UnsupportedOperationException();
+	}
+
+	/* items are stored as Object, next to JUMP */
+
+	@Override
+	@SuppressWarnings("unchecked")
+	public E poll() {
+		final PaddedIndex takeIndex = this.takeIndex;
+		long index = takeIndex.get();
+
+		if (index == takeIndex.cache) {
+
+			/* looks empty, refresh the copy from putIndex and check again. */
+
+			takeIndex.cache = putIndex.get();
+			if (index == takeIndex.cache) {
+				return null;
+			}
+		}
+
+		Ring ring = consumerRing;
+		Object e = ring.items[(int) index & ring.mask];
+
+		if (e == JUMP) {
+			consumerRing = ring = ring.next;
+			e = ring.items[(int) index & ring.mask];
+		}
+
+		/* order has to be maintained. */
+
+		takeIndex.lazySet(index + 1);
+
+		return (E) e;
+	}
+
+	@Override
+	public Iterator<E> iterator() {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public int size() {
+
+		/* same as ArrayQuickQueue.size() */
+
+		long take = takeIndex.get();
+		return (int) Math.min(putIndex.get() - take, maxCapacity);
+	}
+
+	/* number of items the producer's ring holds, as last seen */
+	public int capacity() {
+		return producerRing.mask + 1;
+	}
+
+	/*
+	 * The producer: moves on to a new ring of the given capacity, with e at
+	 * index, and leaves JUMP behind in the current one.
+	 */
+
+	private void resize(Ring ring, long index, int capacity, E e) {
+
+		Ring next = new Ring(capacity);
+		next.items[(int) index & next.mask] = e;
+		ring.next = next;
+		producerRing = next;
+		quietLaps = 0;
+
+		/* order has to be maintained. */
+
+		ring.items[(int) index & ring.mask] = JUMP;
+		putIndex.lazySet(index + 1);
+	}
+}
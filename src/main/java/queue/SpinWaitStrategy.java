@@ -0,0 +1,68 @@
+package queue;
+
+import java.util.function.BooleanSupplier;
+
+/*
+ * A wait strategy that checks again and again, and does something else between
+ * two checks, decided by the subclass. The waiting thread is never blocked, so
+ * there is nothing to signal.
+ *
+ * */
+
+abstract class SpinWaitStrategy implements WaitStrategy {
+
+	/*
+	 * Called after the n-th failed check, n starting at 0. nanos is the time
+	 * left, or Long.MAX_VALUE if untimed.
+	 */
+	abstract void idle(int n, long nanos);
+
+	@Override
+	public final void await(BooleanSupplier ready) throws InterruptedException {
+
+		int n = 0;
+
+		while (!ready.getAsBoolean()) {
+
+			if (Thread.interrupted()) {
+				throw new InterruptedException();
+			}
+
+			idle(n, Long.MAX_VALUE);
+			if (n != Integer.MAX_VALUE) {
+				++n;
+			}
+		}
+	}
+
+	@Override
+	public final boolean await(BooleanSupplier ready, long nanos)
+			throws InterruptedException {
+
+		long deadline = System.nanoTime() + nanos;
+		int n = 0;
+
+		while (!ready.getAsBoolean()) {
+
+			if (Thread.interrupted()) {
+				throw new InterruptedException();
+			}
+
+			nanos = deadline - System.nanoTime();
+			if (nanos <= 0) {
+				return false;
+			}
+
+			idle(n, nanos);
+			if (n != Integer.MAX_VALUE) {
+				++n;
+			}
+		}
+
+		return true;
+	}
+
+	@Override
+	public final void signal() {
+	}
+}
@@ -0,0 +1,162 @@
+package queue;
+
+import java.util.AbstractQueue;
+import java.util.Iterator;
+import java.util.Queue;
+
+/*
+ * A bounded multiple-producer-multiple-consumer queue split into lanes.
+ *
+ * == implementation ==
+ *
+ * ConcurrentArrayQueue has a single putIndex and a single takeIndex, which every
+ * producer and every consumer CAS'es on, and with enough cores the cache lines
+ * holding them are the limit, however little work there is around them.
+ * StripedArrayQueue spreads the load over a power of 2 lanes, each a
+ * ConcurrentArrayQueue of its own, so that threads working on different lanes do
+ * not touch the same indexes.
+ *
+ * Each thread has a home lane, picked from its id, for adding and for removing. A
+ * producer adds to its home lane, and to the next lanes in turn only if it is
+ * full. A consumer removes from its home lane, and steals from the next lanes in
+ * turn only if it is empty. As long as there are about as many lanes as threads
+ * on each side, most threads only ever touch their own lane.
+ *
+ * The price is order: items are FIFO within a lane, but not across lanes, so the
+ * items of a producer may be taken out of order when they spill over to another
+ * lane, or are taken from two lanes by two consumers. poll() returns null only when
+ * every lane has been found empty, and offer() returns false only when every lane
+ * has been found full.
+ *
+ * The capacity is the sum of the capacities of the lanes, the given size split
+ * evenly between them and rounded up to a power of 2 each.
+ *
+ * peek() and iterator() are not supported at this point.
+ *
+ * */
+
+public class StripedArrayQueue<E> extends AbstractQueue<E> implements Queue<E> {
+
+	/* the lanes, a power of 2 of them */
+	private final ConcurrentArrayQueue<E>[] lanes;
+
+	/* lanes.length - 1, maps a thread onto its home lane */
+	private final int mask;
+
+	/* one lane per available processor, rounded up to a power of 2 */
+	public StripedArrayQueue(int size) {
+		this(size, Runtime.getRuntime().availableProcessors());
+	}
+
+	/*
+	 * lanes is rounded up to a power of 2, and size is split evenly between
+	 * them.
+	 */
+	public StripedArrayQueue(int size, int lanes) {
+
+		int n = Pow2.roundToPowerOfTwo(lanes);
+
+		if (size <= 0) {
+			throw new IllegalArgumentException("size: " + size);
+		}
+
+		/* a generic array cannot be created but through an unchecked cast */
+		@SuppressWarnings("unchecked")
+		ConcurrentArrayQueue<E>[] array = (ConcurrentArrayQueue<E>[]) new ConcurrentArrayQueue<?>[n];
+
+		this.lanes = array;
+		this.mask = n - 1;
+
+		for (int i = 0; i < n; ++i) {
+			this.lanes[i] = new ConcurrentArrayQueue<E>((size + n - 1) / n);
+		}
+	}
+
+	@Override
+	public boolean offer(E e) {
+
+		if (e == null) {
+			throw new NullPointerException();
+		}
+
+		final ConcurrentArrayQueue<E>[] lanes = this.lanes;
+		int home = home();
+
+		for (int i = 0; i <= mask; ++i) {
+			if (lanes[(home + i) & mask].offer(e)) {
+				return true;
+			}
+		}
+
+		return false;
+	}
+
+	@Override
+	public E poll() {
+
+		final ConcurrentArrayQueue<E>[] lanes = this.lanes;
+		int home = home();
+
+		for (int i = 0; i <= mask; ++i) {
+
+			E e = lanes[(home + i) & mask].poll();
+			if (e != null) {
+				return e;
+			}
+		}
+
+		return null;
+	}
+
+	@Override
+	public E peek() {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public Iterator<E> iterator() {
+		throw new UnsupportedOperationException();
+	}
+
+	@Override
+	public boolean isEmpty() {
+
+		for (ConcurrentArrayQueue<E> lane : lanes) {
+			if (!lane.isEmpty()) {
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+	/* the sum of the sizes of the lanes, each taken at a different time */
+
+	@Override
+	public int size() {
+
+		int size = 0;
+
+		for (ConcurrentArrayQueue<E> lane : lanes) {
+			size += lane.size();
+		}
+
+		return size;
+	}
+
+	/* maximum number of items queued, over all lanes */
+	public int capacity() {
+		return lanes.length * lanes[0].capacity;
+	}
+
+	/*
+	 * Home lane of the calling thread. The id is scrambled (Fibonacci
+	 * hashing), so that threads created one after another, producers and
+	 * consumers alike, spread over the lanes.
+	 */
+
+	private int home() {
+		long id = Thread.currentThread().getId();
+		return (int) ((id * 0x9E3779B97F4A7C15L) >>> 32) & mask;
+	}
+}
@@ -0,0 +1,142 @@
+package queue;
+
+import static java.lang.invoke.MethodType.methodType;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.reflect.Field;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+
+/*
+ * The one class that uses sun.misc.Unsafe, for the queues that keep their
+ * indexes off the heap, and for measuring field offsets.
+ *
+ * java.util.concurrent.atomic only works on the heap, and ByteBuffer has no
+ * ordered or volatile access before the JDK 9 VarHandle API, so the indexes in
+ * a direct buffer are read and written through their address. Everything else,
+ * records and messages, goes through the plain get and put of ByteBuffer.
+ *
+ * Unsafe is found by reflection and called through method handles held in
+ * static final fields, which the JIT compiles as direct calls. Naming
+ * sun.misc.Unsafe in the source would make javac warn about a proprietary API,
+ * a warning that cannot be suppressed. The price is that a JVM without it fails
+ * when this class is initialized rather than at compile time.
+ * */
+
+final class UnsafeAccess {
+
+	/* (Object, long)long getLong, for the address held by a buffer */
+	private static final MethodHandle GET_LONG;
+
+	private static final MethodHandle GET_LONG_VOLATILE;
+
+	private static final MethodHandle PUT_ORDERED_LONG;
+
+	private static final MethodHandle GET_INT_VOLATILE;
+
+	private static final MethodHandle PUT_ORDERED_INT;
+
+	private static final MethodHandle OBJECT_FIELD_OFFSET;
+
+	/* offset of the native address held by a direct buffer */
+	private static final long ADDRESS_OFFSET;
+
+	static {
+		try {
+			Class<?> c = Class.forName("sun.misc.Unsafe");
+			Field f = c.getDeclaredField("theUnsafe");
+			f.setAccessible(true);
+			Object unsafe = f.get(null);
+
+			MethodHandles.Lookup lookup = MethodHandles.lookup();
+
+			GET_LONG = lookup.findVirtual(c, "getLong",
+					methodType(long.class, Object.class, long.class)).bindTo(
+					unsafe);
+			GET_LONG_VOLATILE = lookup.findVirtual(c, "getLongVolatile",
+					methodType(long.class, Object.class, long.class)).bindTo(
+					unsafe);
+			PUT_ORDERED_LONG = lookup.findVirtual(c, "putOrderedLong",
+					methodType(void.class, Object.class, long.class, long.class))
+					.bindTo(unsafe);
+			GET_INT_VOLATILE = lookup.findVirtual(c, "getIntVolatile",
+					methodType(int.class, Object.class, long.class)).bindTo(
+					unsafe);
+			PUT_ORDERED_INT = lookup.findVirtual(c, "putOrderedInt",
+					methodType(void.class, Object.class, long.class, int.class))
+					.bindTo(unsafe);
+
+			OBJECT_FIELD_OFFSET = lookup.findVirtual(c, "objectFieldOffset",
+					methodType(long.class, Field.class)).bindTo(unsafe);
+
+			ADDRESS_OFFSET = (long) OBJECT_FIELD_OFFSET.invokeExact(Buffer.class
+					.getDeclaredField("address"));
+
+		} catch (Throwable t) {
+			throw new ExceptionInInitializerError(t);
+		}
+	}
+
+	private UnsafeAccess() {
+	}
+
+	/* native address of the first byte of a direct buffer */
+	static long address(ByteBuffer buffer) {
+
+		if (!buffer.isDirect()) {
+			throw new IllegalArgumentException("not a direct buffer");
+		}
+
+		try {
+			return (long) GET_LONG.invokeExact((Object) buffer, ADDRESS_OFFSET);
+		} catch (Throwable t) {
+			throw new Error(t);
+		}
+	}
+
+	/* offset of an instance field from the start of its object */
+	static long objectFieldOffset(Field field) {
+		try {
+			return (long) OBJECT_FIELD_OFFSET.invokeExact(field);
+		} catch (Throwable t) {
+			throw new Error(t);
+		}
+	}
+
+	/* volatile load of the long at address */
+	static long getLongVolatile(long address) {
+		try {
+			return (long) GET_LONG_VOLATILE.invokeExact((Object) null, address);
+		} catch (Throwable t) {
+			throw new Error(t);
+		}
+	}
+
+	/* ordered store of the long at address */
+	static void putOrderedLong(long address, long value) {
+		try {
+			PUT_ORDERED_LONG.invokeExact((Object) null, address, value);
+		} catch (Throwable t) {
+			throw new Error(t);
+		}
+	}
+
+	/* volatile load of the int at address */
+	static int getIntVolatile(long address) {
+		try {
+			return (int) GET_INT_VOLATILE.invokeExact((Object) null, address);
+		} catch (Throwable t) {
+			throw new Error(t);
+		}
+	}
+
+	/* ordered store of the int at address */
+	static void putOrderedInt(long address, int value) {
+		try {
+			PUT_ORDERED_INT.invokeExact((Object) null, address, value);
+		} catch (Throwable t) {
+			throw new Error(t);
+		}
+	}
+}
@@ -0,0 +1,38 @@
+package queue;
+
+import java.util.function.BooleanSupplier;
+
+/*
+ * How a blocking queue waits for the queue to become not empty or not full.
+ *
+ * The queue calls await() once it has found that it cannot go on, with a check
+ * telling whether it can now, and calls signal() after every change the other
+ * side may be waiting for. A strategy may spin, yield, park or block on a lock, and
+ * decides whether signal() has anything to do; as it is called all the time, it
+ * should cost next to nothing when nobody waits.
+ *
+ * The change is published with a volatile store before signal() is called, and
+ * the check reads it with a volatile load, so a strategy may record a waiter
+ * with a volatile store before the check, and look for one with a volatile load
+ * in signal(): either the waiter sees the change, or signal() sees the waiter.
+ *
+ * A strategy keeps the state of the threads waiting on one queue, so each queue
+ * needs an instance of its own.
+ *
+ * */
+
+public interface WaitStrategy {
+
+	/* waits until ready is true */
+	void await(BooleanSupplier ready) throws InterruptedException;
+
+	/*
+	 * waits until ready is true or nanos have passed, and returns whether
+	 * ready is true
+	 */
+	boolean await(BooleanSupplier ready, long nanos)
+			throws InterruptedException;
+
+	/* wakes the waiting thread up, if there is one */
+	void signal();
+}
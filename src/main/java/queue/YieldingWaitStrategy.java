@@ -0,0 +1,20 @@
+package queue;
+
+/*
+ * Spins for a while, then yields the processor between two checks. Close to
+ * busy-spin latency, but gives other threads a chance when cores are shared.
+ *
+ * */
+
+public final class YieldingWaitStrategy extends SpinWaitStrategy {
+
+	/* number of checks before yielding */
+	static final int SPINS = 100;
+
+	@Override
+	void idle(int n, long nanos) {
+		if (n >= SPINS) {
+			Thread.yield();
+		}
+	}
+}
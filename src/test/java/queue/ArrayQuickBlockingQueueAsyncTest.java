@@ -0,0 +1,186 @@
+package queue;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Date;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Test;
+
+/*
+ * Consistency and throughput testing of offerAsync() and pollAsync(). Neither
+ * side ever blocks: each goes on from a callback on its future whenever the
+ * queue is full or empty, on whichever thread completes the future.
+ *
+ * */
+
+public class ArrayQuickBlockingQueueAsyncTest {
+
+	/* size of the array to use in testing */
+	private final static int size = 16;
+
+	/* number of items to use in testing */
+	private final static int max = Integer.MAX_VALUE / 1000;
+
+	/* for thread management */
+	private final ExecutorService executorService = Executors
+			.newCachedThreadPool();
+
+	@After
+	public void cleanup() throws InterruptedException {
+
+		executorService.shutdown();
+		if (!executorService.awaitTermination(10, TimeUnit.SECONDS)) {
+			/* if executor failed to shutdown gracefully */
+			throw new IllegalStateException();
+		}
+	}
+
+	@Test
+	public void testQueue() throws InterruptedException {
+
+		System.out.println("ArrayQuickBlockingQueue async");
+
+		final CountDownLatch latch = new CountDownLatch(1);
+		final ArrayQuickBlockingQueue<Integer> queue = new ArrayQuickBlockingQueue<Integer>(
+				size);
+
+		/* single producer, single consumer */
+
+		final Producer producer = new Producer(queue);
+		final Consumer consumer = new Consumer(queue);
+
+		executorService.submit(() -> {
+			latch.await();
+			producer.run(0);
+			return null;
+		});
+		executorService.submit(() -> {
+			latch.await();
+			consumer.run(0);
+			return null;
+		});
+
+		long begin = new Date().getTime();
+		latch.countDown();
+
+		try {
+			producer.done.get(60, TimeUnit.SECONDS);
+			consumer.done.get(60, TimeUnit.SECONDS);
+		} catch (ExecutionException e) {
+			throw LaunderThrowable.launderThrowable(e.getCause());
+		} catch (Exception e) {
+			throw LaunderThrowable.launderThrowable(e);
+		}
+
+		System.out.println("producer and consumer:"
+				+ (new Date().getTime() - begin));
+	}
+
+	/* pending futures are completed by the other side, on the other side */
+
+	@Test
+	public void testPending() throws Exception {
+
+		final ArrayQuickBlockingQueue<Integer> queue = new ArrayQuickBlockingQueue<Integer>(
+				1);
+
+		CompletableFuture<Integer> poll = queue.pollAsync();
+		assertFalse(poll.isDone());
+
+		assertTrue(queue.offerAsync(0).isDone());
+		assertTrue(poll.get(10, TimeUnit.SECONDS) == 0);
+
+		assertTrue(queue.offerAsync(1).isDone());
+		CompletableFuture<Void> offer = queue.offerAsync(2);
+		assertFalse(offer.isDone());
+
+		assertTrue(queue.take() == 1);
+		offer.get(10, TimeUnit.SECONDS);
+		assertTrue(queue.pollAsync().get(10, TimeUnit.SECONDS) == 2);
+		assertTrue(queue.isEmpty());
+	}
+
+	private static class Producer {
+
+		private final ArrayQuickBlockingQueue<Integer> queue;
+		private final CompletableFuture<String> done = new CompletableFuture<String>();
+
+		Producer(ArrayQuickBlockingQueue<Integer> queue) {
+			this.queue = queue;
+		}
+
+		/* adds from num on, until an offer has to wait */
+		void run(int num) {
+
+			while (num != max) {
+
+				CompletableFuture<Void> future = queue.offerAsync(num++);
+
+				if (!future.isDone()) {
+					final int next = num;
+					future.thenRun(() -> run(next));
+					return;
+				}
+			}
+
+			done.complete(null);
+		}
+	}
+
+	private static class Consumer {
+
+		private final ArrayQuickBlockingQueue<Integer> queue;
+		private final CompletableFuture<String> done = new CompletableFuture<String>();
+
+		Consumer(ArrayQuickBlockingQueue<Integer> queue) {
+			this.queue = queue;
+		}
+
+		/* removes from num on, until a poll has to wait */
+		void run(int num) {
+
+			try {
+				while (num != max) {
+
+					CompletableFuture<Integer> future = queue.pollAsync();
+
+					if (!future.isDone()) {
+						final int cur = num;
+						future.thenAccept(e -> {
+							check(e, cur);
+							run(cur + 1);
+						});
+						return;
+					}
+
+					check(future.getNow(null), num);
+					++num;
+				}
+			} catch (Throwable t) {
+				done.completeExceptionally(t);
+				return;
+			}
+
+			done.complete(null);
+		}
+
+		private void check(int cur, int num) {
+
+			/* cur = num */
+
+			if (cur != num) {
+				done.completeExceptionally(new AssertionError("[" + cur
+						+ "] should be [" + num + "]"));
+				throw new IllegalStateException();
+			}
+		}
+	}
+}
@@ -1,5 +1,9 @@
 package queue;
 
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.Callable;
@@ -78,6 +82,108 @@ public class ArrayQuickBlockingQueueThroughputTest {
 		}
 	}
 
+	/*
+	 * The consumer drains in bulk, falling back to take() when the queue is
+	 * empty, and checks the order of items.
+	 */
+
+	@Test
+	public void testDrainTo() throws InterruptedException {
+
+		System.out.println("ArrayQuickBlockingQueue drainTo");
+
+		final CountDownLatch latch = new CountDownLatch(1);
+		final BlockingQueue<Integer> queue = new ArrayQuickBlockingQueue<Integer>(
+				size);
+
+		service.submit(new Producer(queue, latch));
+		service.submit(new DrainConsumer(queue, latch));
+
+		latch.countDown();
+
+		int count = 2;
+
+		while (count != 0) {
+
+			try {
+
+				Future<String> future = service.take();
+				String msg = future.get();
+				System.out.println(msg);
+				--count;
+
+			} catch (ExecutionException e) {
+				throw LaunderThrowable.launderThrowable(e.getCause());
+			}
+		}
+	}
+
+	/*
+	 * The consumer takes in batches, lingering for a full one, and checks the
+	 * order of items.
+	 */
+
+	@Test
+	public void testTakeBatch() throws InterruptedException {
+
+		System.out.println("ArrayQuickBlockingQueue takeBatch");
+
+		final CountDownLatch latch = new CountDownLatch(1);
+		final ArrayQuickBlockingQueue<Integer> queue = new ArrayQuickBlockingQueue<Integer>(
+				size);
+
+		service.submit(new Producer(queue, latch));
+		service.submit(new BatchConsumer(queue, latch));
+
+		latch.countDown();
+
+		int count = 2;
+
+		while (count != 0) {
+
+			try {
+
+				Future<String> future = service.take();
+				String msg = future.get();
+				System.out.println(msg);
+				--count;
+
+			} catch (ExecutionException e) {
+				throw LaunderThrowable.launderThrowable(e.getCause());
+			}
+		}
+	}
+
+	/* a batch that does not fill up is taken when the linger time is up */
+
+	@Test
+	public void testTakeBatchLinger() throws InterruptedException {
+
+		final ArrayQuickBlockingQueue<Integer> queue = new ArrayQuickBlockingQueue<Integer>(
+				size);
+		final Integer[] batch = new Integer[size];
+		final long linger = 50;
+
+		queue.put(0);
+		queue.put(1);
+
+		long begin = System.nanoTime();
+		int n = queue.takeBatch(batch, 0, size, linger, TimeUnit.MILLISECONDS);
+
+		assertTrue(System.nanoTime() - begin >= TimeUnit.MILLISECONDS
+				.toNanos(linger));
+		assertTrue(n == 2 && batch[0] == 0 && batch[1] == 1);
+		assertTrue(queue.isEmpty());
+
+		/* no lingering once the batch is full */
+
+		queue.put(2);
+		queue.put(3);
+
+		assertTrue(queue.takeBatch(batch, 1, 2, 1, TimeUnit.DAYS) == 2);
+		assertTrue(batch[1] == 2 && batch[2] == 3);
+	}
+
 	@Test
 	public void benchmark() throws InterruptedException {
 
@@ -161,4 +267,79 @@ public class ArrayQuickBlockingQueueThroughputTest {
 			return name + ":" + (new Date().getTime() - begin);
 		}
 	}
+
+	private static class DrainConsumer implements Callable<String> {
+
+		private final BlockingQueue<Integer> queue;
+		private final CountDownLatch event;
+
+		DrainConsumer(BlockingQueue<Integer> queue, CountDownLatch event) {
+			this.queue = queue;
+			this.event = event;
+		}
+
+		@Override
+		public String call() throws Exception {
+
+			int num = 0;
+			List<Integer> list = new ArrayList<Integer>(size);
+			String name = Thread.currentThread().getName();
+			event.await();
+			long begin = new Date().getTime();
+
+			while (num != max) {
+
+				if (queue.drainTo(list) == 0) {
+					list.add(queue.take());
+				}
+
+				for (Integer cur : list) {
+					assertTrue("[" + cur + "] should be [" + num + "]",
+							cur == num);
+					++num;
+				}
+
+				list.clear();
+			}
+
+			return name + ":" + (new Date().getTime() - begin);
+		}
+	}
+
+	private static class BatchConsumer implements Callable<String> {
+
+		private final ArrayQuickBlockingQueue<Integer> queue;
+		private final CountDownLatch event;
+
+		BatchConsumer(ArrayQuickBlockingQueue<Integer> queue,
+				CountDownLatch event) {
+			this.queue = queue;
+			this.event = event;
+		}
+
+		@Override
+		public String call() throws Exception {
+
+			int num = 0;
+			Integer[] batch = new Integer[size / 2];
+			String name = Thread.currentThread().getName();
+			event.await();
+			long begin = new Date().getTime();
+
+			while (num != max) {
+
+				int n = queue.takeBatch(batch, 0, batch.length, 1,
+						TimeUnit.MILLISECONDS);
+
+				for (int i = 0; i < n; ++i) {
+					int cur = batch[i];
+					assertTrue("[" + cur + "] should be [" + num + "]",
+							cur == num);
+					++num;
+				}
+			}
+
+			return name + ":" + (new Date().getTime() - begin);
+		}
+	}
 }
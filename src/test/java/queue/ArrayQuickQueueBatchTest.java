@@ -0,0 +1,190 @@
+package queue;
+
+import static org.junit.Assert.assertTrue;
+
+import java.util.Date;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import org.junit.After;
+import org.junit.Test;
+
+/*
+ * Consistency and throughput testing of the bulk operations of ArrayQuickQueue.
+ *
+ * The producer alternates offer(E[], int, int) and fill(), the consumer
+ * alternates poll(E[], int, int) and drain(), and the consumer checks the order
+ * of items.
+ *
+ */
+
+public class ArrayQuickQueueBatchTest {
+
+	/* size of the array to use in testing */
+	private final static int size = 100;
+
+	/* number of items moved by one bulk operation */
+	private final static int batch = 64;
+
+	/* number of items to use in testing */
+	private final static int max = Integer.MAX_VALUE / 10;
+
+	/* for thread management */
+	private final ExecutorService executorService = Executors
+			.newCachedThreadPool();
+	private final CompletionService<String> service = new ExecutorCompletionService<String>(
+			executorService);
+
+	private final CountDownLatch start = new CountDownLatch(1);
+	private final ArrayQuickQueue<Integer> queue = new ArrayQuickQueue<Integer>(
+			size);
+
+	@Test
+	public void testBatch() throws InterruptedException {
+
+		System.out.println("ArrayQuickQueue batch of " + batch);
+
+		/* single producer, single consumer */
+
+		service.submit(new Producer());
+		service.submit(new Consumer());
+
+		start.countDown();
+
+		int count = 2;
+		while (count != 0) {
+
+			Future<String> future = service.take();
+			try {
+				String msg = future.get();
+				System.out.println(msg);
+				--count;
+			} catch (ExecutionException e) {
+				throw LaunderThrowable.launderThrowable(e.getCause());
+			}
+		}
+	}
+
+	@After
+	public void cleanup() throws InterruptedException {
+
+		executorService.shutdown();
+		if (!executorService.awaitTermination(10, TimeUnit.SECONDS)) {
+			throw new IllegalStateException();
+		}
+	}
+
+	private class Producer implements Callable<String>, Supplier<Integer> {
+
+		private int num = 0;
+
+		@Override
+		public Integer get() {
+			return num++;
+		}
+
+		@Override
+		public String call() throws Exception {
+
+			Integer[] src = new Integer[batch];
+			boolean fill = false;
+
+			String name = Thread.currentThread().getName();
+			start.await();
+
+			long begin = new Date().getTime();
+
+			while (num != max) {
+
+				if (Thread.interrupted()) {
+					throw new InterruptedException();
+				}
+
+				int len = Math.min(batch, max - num);
+				int n;
+
+				if (fill) {
+					n = queue.fill(this, len);
+				} else {
+					for (int i = 0; i < len; ++i) {
+						src[i] = num + i;
+					}
+					n = queue.offer(src, 0, len);
+					num += n;
+				}
+
+				if (n == 0) {
+					/* If queue is full */
+					Thread.yield();
+				}
+
+				fill = !fill;
+			}
+
+			return name + ":" + (new Date().getTime() - begin);
+		}
+	}
+
+	private class Consumer implements Callable<String>,
+			java.util.function.Consumer<Integer> {
+
+		private int prev = -1;
+
+		@Override
+		public void accept(Integer cur) {
+
+			/* cur = prev + 1 */
+
+			assertTrue("[" + cur + "] should follow [" + prev + "]",
+					cur == (prev + 1));
+			prev = cur;
+		}
+
+		@Override
+		public String call() throws Exception {
+
+			Integer[] dst = new Integer[batch];
+			boolean drain = false;
+
+			String name = Thread.currentThread().getName();
+			start.await();
+
+			long begin = new Date().getTime();
+
+			while (prev != max - 1) {
+
+				if (Thread.interrupted()) {
+					throw new InterruptedException();
+				}
+
+				int n;
+
+				if (drain) {
+					n = queue.drain(this, batch);
+				} else {
+					n = queue.poll(dst, 0, batch);
+					for (int i = 0; i < n; ++i) {
+						accept(dst[i]);
+					}
+				}
+
+				if (n == 0) {
+					/* If queue is empty */
+					Thread.yield();
+				}
+
+				drain = !drain;
+			}
+
+			return name + ":" + (new Date().getTime() - begin);
+		}
+	}
+}
@@ -0,0 +1,232 @@
+package queue;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.ByteBuffer;
+import java.util.Date;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Test;
+
+/*
+ * Consistency and throughput testing of ByteBufferQuickQueue.
+ *
+ * Messages have varying lengths, so that the ring wraps around at every
+ * offset. Each one holds its sequence number followed by bytes derived from it.
+ * The producer alternates claim/commit and offer(byte[]), and the consumer
+ * checks every message in place.
+ *
+ * */
+
+public class ByteBufferQuickQueueTest {
+
+	/* size of the ring to use in testing */
+	private final static int size = 64 * 1024;
+
+	/* longest message to use in testing */
+	private final static int longest = 100;
+
+	/* number of messages to use in testing */
+	private final static int max = Integer.MAX_VALUE / 100;
+
+	/* for thread management */
+	private final ExecutorService executorService = Executors
+			.newCachedThreadPool();
+	private final CompletionService<String> service = new ExecutorCompletionService<String>(
+			executorService);
+
+	private final CountDownLatch start = new CountDownLatch(1);
+
+	@Test
+	public void testQueue() throws InterruptedException {
+
+		System.out.println("ByteBufferQuickQueue");
+
+		ByteBufferQuickQueue queue = new ByteBufferQuickQueue(size);
+
+		/* single producer, single consumer */
+
+		service.submit(new Producer(queue));
+		service.submit(new Consumer(queue));
+
+		start.countDown();
+
+		int count = 2;
+		while (count != 0) {
+
+			Future<String> future = service.take();
+			try {
+				String msg = future.get();
+				System.out.println(msg);
+				--count;
+			} catch (ExecutionException e) {
+				throw LaunderThrowable.launderThrowable(e.getCause());
+			}
+		}
+	}
+
+	@Test
+	public void testWrapAround() {
+
+		ByteBufferQuickQueue queue = new ByteBufferQuickQueue(1);
+		final byte[] msg = new byte[queue.maxMessageLength()];
+		final int[] read = new int[1];
+
+		/* every offset of the ring, with and without padding */
+
+		for (int i = 0; i < queue.capacity(); ++i) {
+
+			assertTrue(queue.offer(msg, 0, i % (msg.length + 1)));
+			assertEquals(1, queue.read(new ByteBufferQuickQueue.MessageHandler() {
+
+				@Override
+				public void onMessage(ByteBuffer buffer, int offset, int length) {
+					++read[0];
+				}
+			}));
+			assertTrue(queue.isEmpty());
+		}
+
+		assertEquals(queue.capacity(), read[0]);
+	}
+
+	@After
+	public void cleanup() throws InterruptedException {
+
+		executorService.shutdown();
+		if (!executorService.awaitTermination(10, TimeUnit.SECONDS)) {
+			throw new IllegalStateException();
+		}
+	}
+
+	/* length of message num */
+	private static int length(int num) {
+		return 4 + num % (longest - 3);
+	}
+
+	private class Producer implements Callable<String> {
+
+		private final ByteBufferQuickQueue queue;
+
+		Producer(ByteBufferQuickQueue queue) {
+			this.queue = queue;
+		}
+
+		@Override
+		public String call() throws Exception {
+
+			byte[] src = new byte[longest];
+			ByteBuffer msg = ByteBuffer.wrap(src).order(
+					queue.buffer().order());
+			boolean claim = false;
+			int num = 0;
+
+			String name = Thread.currentThread().getName();
+			start.await();
+
+			long begin = new Date().getTime();
+
+			while (num != max) {
+
+				if (Thread.interrupted()) {
+					throw new InterruptedException();
+				}
+
+				int length = length(num);
+				boolean added;
+
+				if (claim) {
+					int offset = queue.claim(length);
+					added = offset >= 0;
+					if (added) {
+						ByteBuffer buffer = queue.buffer();
+						buffer.putInt(offset, num);
+						for (int i = 4; i < length; ++i) {
+							buffer.put(offset + i, (byte) (num + i));
+						}
+						queue.commit();
+					}
+				} else {
+					msg.putInt(0, num);
+					for (int i = 4; i < length; ++i) {
+						src[i] = (byte) (num + i);
+					}
+					added = queue.offer(src, 0, length);
+				}
+
+				if (added) {
+					++num;
+					claim = !claim;
+				} else {
+					/* If queue is full */
+					Thread.yield();
+				}
+			}
+
+			return name + ":" + (new Date().getTime() - begin);
+		}
+	}
+
+	private class Consumer implements Callable<String>,
+			ByteBufferQuickQueue.MessageHandler {
+
+		private final ByteBufferQuickQueue queue;
+
+		private int prev = -1;
+
+		Consumer(ByteBufferQuickQueue queue) {
+			this.queue = queue;
+		}
+
+		@Override
+		public void onMessage(ByteBuffer buffer, int offset, int length) {
+
+			int cur = buffer.getInt(offset);
+
+			/* cur = prev + 1 */
+
+			assertTrue("[" + cur + "] should follow [" + prev + "]",
+					cur == (prev + 1));
+			assertEquals(length(cur), length);
+
+			for (int i = 4; i < length; ++i) {
+				assertEquals((byte) (cur + i), buffer.get(offset + i));
+			}
+
+			prev = cur;
+		}
+
+		@Override
+		public String call() throws Exception {
+
+			String name = Thread.currentThread().getName();
+			start.await();
+
+			long begin = new Date().getTime();
+
+			while (prev != max - 1) {
+
+				if (Thread.interrupted()) {
+					throw new InterruptedException();
+				}
+
+				if (queue.read(this) == 0) {
+					/* If queue is empty */
+					Thread.yield();
+				}
+			}
+
+			return name + ":" + (new Date().getTime() - begin);
+		}
+	}
+}
@@ -0,0 +1,97 @@
+package queue;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Queue;
+import java.util.concurrent.BlockingQueue;
+
+import org.junit.Test;
+
+/*
+ * Capacity testing of the array queues: a size that is not a power of 2 is
+ * rounded up, every slot of the array is used, and size() and
+ * remainingCapacity() are exact.
+ *
+ * */
+
+public class CapacityTest {
+
+	/* size to use in testing, not a power of 2 */
+	private final static int size = 100;
+
+	/* size rounded up to a power of 2 */
+	private final static int capacity = 128;
+
+	@Test
+	public void testArrayQuickQueue() {
+		test(new ArrayQuickQueue<Integer>(size));
+	}
+
+	@Test
+	public void testArrayQuickBlockingQueue() {
+		test(new ArrayQuickBlockingQueue<Integer>(size));
+	}
+
+	@Test
+	public void testConcurrentArrayQueue() {
+		test(new ConcurrentArrayQueue<Integer>(size));
+	}
+
+	@Test
+	public void testConcurrentArrayBlockingQueue() {
+		test(new ConcurrentArrayBlockingQueue<Integer>(size));
+	}
+
+	@Test
+	public void testRoundToPowerOfTwo() {
+
+		assertEquals(1, Pow2.roundToPowerOfTwo(1));
+		assertEquals(capacity, Pow2.roundToPowerOfTwo(size));
+		assertEquals(capacity, Pow2.roundToPowerOfTwo(capacity));
+		assertEquals(Pow2.MAX_POW2, Pow2.roundToPowerOfTwo(Pow2.MAX_POW2));
+
+		for (int bad : new int[] { 0, -1, Pow2.MAX_POW2 + 1 }) {
+			try {
+				Pow2.roundToPowerOfTwo(bad);
+				throw new AssertionError("accepted " + bad);
+			} catch (IllegalArgumentException e) {
+				/* expected */
+			}
+		}
+	}
+
+	/* fills the queue, then empties it, checking the counts on the way */
+	private static void test(Queue<Integer> queue) {
+
+		assertSize(queue, 0);
+
+		for (int i = 0; i < capacity; ++i) {
+			assertTrue(queue.offer(i));
+			assertSize(queue, i + 1);
+		}
+
+		/* full at exactly the rounded capacity */
+
+		assertFalse(queue.offer(capacity));
+		assertSize(queue, capacity);
+
+		for (int i = 0; i < capacity; ++i) {
+			assertEquals(i, (int) queue.poll());
+			assertSize(queue, capacity - i - 1);
+		}
+
+		assertTrue(queue.isEmpty());
+	}
+
+	private static void assertSize(Queue<Integer> queue, int n) {
+
+		assertEquals(n, queue.size());
+
+		if (queue instanceof BlockingQueue) {
+			assertEquals(capacity - n,
+					((BlockingQueue<Integer>) queue).remainingCapacity());
+		}
+	}
+}
@@ -0,0 +1,209 @@
+package queue;
+
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Date;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Test;
+
+/*
+ * Lazy allocation, consistency and throughput testing of
+ * CompactArrayQuickQueue, using ArrayQuickQueue of the maximum size as
+ * benchmark. The producer adds in bursts, so that the ring grows and starts
+ * over small all the time.
+ *
+ * */
+
+public class CompactArrayQuickQueueTest {
+
+	/* maximum size of the array to use in testing */
+	private final static int maxSize = 1024;
+
+	/* number of items to use in testing */
+	private final static int max = Integer.MAX_VALUE / 100;
+
+	/* number of items per burst, then the producer waits for the queue to drain */
+	private final static int burst = 10000;
+
+	/* size of the first array */
+	private final static int initial = CompactArrayQuickQueue.INITIAL_CAPACITY;
+
+	/* for thread management */
+	private final ExecutorService executorService = Executors
+			.newCachedThreadPool();
+	private final CompletionService<String> service = new ExecutorCompletionService<String>(
+			executorService);
+
+	@After
+	public void cleanup() throws InterruptedException {
+
+		executorService.shutdown();
+		if (!executorService.awaitTermination(10, TimeUnit.SECONDS)) {
+			/* if executor failed to shutdown gracefully */
+			throw new IllegalStateException();
+		}
+	}
+
+	/* no array until the first offer, grows up to maxSize, starts over small */
+
+	@Test
+	public void testLazy() {
+
+		CompactArrayQuickQueue<Integer> queue = new CompactArrayQuickQueue<Integer>(
+				maxSize);
+		assertTrue(queue.capacity() == 0);
+		assertNull(queue.poll());
+
+		int put = 0;
+		int take = 0;
+
+		for (int round = 0; round < 3; ++round) {
+
+			while (queue.offer(put)) {
+				++put;
+			}
+
+			assertTrue(queue.capacity() == maxSize);
+			assertTrue(queue.size() == maxSize);
+
+			while (take != put) {
+				assertTrue(queue.poll() == take++);
+			}
+
+			assertNull(queue.poll());
+
+			/* one item at a time: the ring stays small */
+
+			for (int i = 0; i < maxSize; ++i) {
+				assertTrue(queue.offer(put++));
+				assertTrue(queue.capacity() == initial);
+				assertTrue(queue.poll() == take++);
+			}
+		}
+	}
+
+	@Test
+	public void testQueue() throws InterruptedException {
+		test(new CompactArrayQuickQueue<Integer>(maxSize));
+	}
+
+	@Test
+	public void benchmark() throws InterruptedException {
+		test(new ArrayQuickQueue<Integer>(maxSize));
+	}
+
+	private void test(Queue<Integer> queue) throws InterruptedException {
+
+		System.out.println(queue.getClass().getSimpleName());
+
+		final CountDownLatch latch = new CountDownLatch(1);
+
+		service.submit(new Producer(queue, latch));
+		service.submit(new Consumer(queue, latch));
+
+		latch.countDown();
+
+		for (int count = 2; count != 0; --count) {
+
+			try {
+
+				Future<String> future = service.take();
+				String msg = future.get();
+				System.out.println(msg);
+
+			} catch (ExecutionException e) {
+				throw LaunderThrowable.launderThrowable(e.getCause());
+			}
+		}
+
+		assertNull(queue.poll());
+	}
+
+	private static class Producer implements Callable<String> {
+
+		private final Queue<Integer> queue;
+		private final CountDownLatch event;
+
+		Producer(Queue<Integer> queue, CountDownLatch event) {
+			this.queue = queue;
+			this.event = event;
+		}
+
+		@Override
+		public String call() throws Exception {
+
+			int num = 0;
+			String name = Thread.currentThread().getName();
+			event.await();
+			long begin = new Date().getTime();
+
+			while (num != max) {
+
+				if (queue.offer(num)) {
+					++num;
+				} else {
+					/* if queue is full */
+					Thread.yield();
+				}
+
+				if (num % burst == 0) {
+					while (!queue.isEmpty()) {
+						Thread.yield();
+					}
+				}
+			}
+
+			return name + ":" + (new Date().getTime() - begin);
+		}
+	}
+
+	private static class Consumer implements Callable<String> {
+
+		private final Queue<Integer> queue;
+		private final CountDownLatch event;
+
+		Consumer(Queue<Integer> queue, CountDownLatch event) {
+			this.queue = queue;
+			this.event = event;
+		}
+
+		@Override
+		public String call() throws Exception {
+
+			int num = 0;
+			String name = Thread.currentThread().getName();
+			event.await();
+			long begin = new Date().getTime();
+
+			while (num != max) {
+
+				Integer cur = queue.poll();
+
+				if (cur == null) {
+					/* if queue is empty */
+					Thread.yield();
+					continue;
+				}
+
+				/* cur = num */
+
+				assertTrue("[" + cur + "] should be [" + num + "]", cur == num);
+				++num;
+			}
+
+			return name + ":" + (new Date().getTime() - begin);
+		}
+	}
+}
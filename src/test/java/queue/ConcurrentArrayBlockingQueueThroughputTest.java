@@ -0,0 +1,219 @@
+package queue;
+
+import static org.junit.Assert.assertTrue;
+
+import java.util.Date;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+import org.junit.After;
+import org.junit.Test;
+
+/*
+ * Consistency and throughput testing with 4, 8 and 16 threads, half of them
+ * producers and half of them consumers, using
+ * java.util.concurrent.ArrayBlockingQueue and
+ * java.util.concurrent.LinkedBlockingQueue as benchmark.
+ *
+ * */
+
+public class ConcurrentArrayBlockingQueueThroughputTest {
+
+	/* size of the array to use in testing */
+	private final static int size = 400;
+
+	/* number of items to use in testing */
+	private final static int max = Integer.MAX_VALUE / 1000;
+
+	/* numbers of threads to use in testing */
+	private final static int[] threads = { 4, 8, 16 };
+
+	/* thread management */
+	private final ExecutorService executorService = Executors
+			.newCachedThreadPool();
+	private final CompletionService<String> service = new ExecutorCompletionService<String>(
+			executorService);
+
+	@After
+	public void cleanup() throws InterruptedException {
+
+		executorService.shutdown();
+		if (!executorService.awaitTermination(10, TimeUnit.SECONDS)) {
+			throw new IllegalStateException();
+		}
+	}
+
+	@Test
+	public void testQueue() throws InterruptedException {
+		test(() -> new ConcurrentArrayBlockingQueue<Integer>(size));
+	}
+
+	@Test
+	public void benchmark() throws InterruptedException {
+		test(() -> new ArrayBlockingQueue<Integer>(size));
+	}
+
+	@Test
+	public void benchmarkLinked() throws InterruptedException {
+		test(() -> new LinkedBlockingQueue<Integer>(size));
+	}
+
+	/* timed offer and poll give up, and interrupts are honoured */
+
+	@Test
+	public void testTimeouts() throws InterruptedException {
+
+		final BlockingQueue<Integer> queue = new ConcurrentArrayBlockingQueue<Integer>(
+				2);
+		final long timeout = 50;
+
+		long begin = System.nanoTime();
+		assertTrue(queue.poll(timeout, TimeUnit.MILLISECONDS) == null);
+		assertTrue(System.nanoTime() - begin >= TimeUnit.MILLISECONDS
+				.toNanos(timeout));
+
+		assertTrue(queue.offer(0, timeout, TimeUnit.MILLISECONDS));
+		assertTrue(queue.offer(0, timeout, TimeUnit.MILLISECONDS));
+
+		begin = System.nanoTime();
+		assertTrue(!queue.offer(1, timeout, TimeUnit.MILLISECONDS));
+		assertTrue(System.nanoTime() - begin >= TimeUnit.MILLISECONDS
+				.toNanos(timeout));
+
+		Thread.currentThread().interrupt();
+		try {
+			queue.put(1);
+			throw new AssertionError("should be interrupted");
+		} catch (InterruptedException e) {
+			assertTrue(!Thread.interrupted());
+		}
+
+		assertTrue(queue.take() == 0);
+		assertTrue(queue.remainingCapacity() == 1);
+		assertTrue(queue.take() == 0);
+	}
+
+	private void test(Supplier<BlockingQueue<Integer>> supplier)
+			throws InterruptedException {
+
+		for (int n : threads) {
+
+			final BlockingQueue<Integer> queue = supplier.get();
+			final CountDownLatch latch = new CountDownLatch(1);
+			final AtomicInteger produced = new AtomicInteger(0);
+			final AtomicLong sum = new AtomicLong(0);
+			final int producers = n / 2;
+			final int consumers = n / 2;
+
+			System.out.println(queue.getClass().getSimpleName() + " " + n
+					+ " threads");
+
+			/* Multiple producers, multiple consumers */
+
+			for (int i = 0; i < producers; ++i) {
+				service.submit(new Producer(queue, latch, produced));
+			}
+
+			for (int i = 0; i < consumers; ++i) {
+				service.submit(new Consumer(queue, latch, max / consumers
+						+ (i < max % consumers ? 1 : 0), sum));
+			}
+
+			long begin = new Date().getTime();
+			latch.countDown();
+
+			for (int i = producers + consumers; i != 0; --i) {
+
+				Future<String> future = service.take();
+				try {
+					future.get();
+				} catch (ExecutionException e) {
+					throw LaunderThrowable.launderThrowable(e.getCause());
+				}
+			}
+
+			System.out.println("all threads:" + (new Date().getTime() - begin));
+
+			/* every item is taken once */
+
+			assertTrue(sum.get() == (long) max * (max - 1) / 2);
+			assertTrue(queue.isEmpty());
+		}
+	}
+
+	private static class Producer implements Callable<String> {
+
+		private final BlockingQueue<Integer> queue;
+		private final CountDownLatch event;
+		private final AtomicInteger count;
+
+		Producer(BlockingQueue<Integer> queue, CountDownLatch event,
+				AtomicInteger count) {
+			this.queue = queue;
+			this.event = event;
+			this.count = count;
+		}
+
+		@Override
+		public String call() throws Exception {
+
+			event.await();
+
+			while (true) {
+
+				int num = count.getAndIncrement();
+				if (num >= max) {
+					break;
+				}
+
+				queue.put(num);
+			}
+
+			return null;
+		}
+	}
+
+	private static class Consumer implements Callable<String> {
+
+		private final BlockingQueue<Integer> queue;
+		private final CountDownLatch event;
+		private final int count;
+		private final AtomicLong sum;
+
+		Consumer(BlockingQueue<Integer> queue, CountDownLatch event, int count,
+				AtomicLong sum) {
+			this.queue = queue;
+			this.event = event;
+			this.count = count;
+			this.sum = sum;
+		}
+
+		@Override
+		public String call() throws Exception {
+
+			long total = 0;
+			event.await();
+
+			for (int i = 0; i < count; ++i) {
+				total += queue.take();
+			}
+
+			sum.addAndGet(total);
+
+			return null;
+		}
+	}
+}
@@ -1,5 +1,7 @@
 package queue;
 
+import static org.junit.Assert.assertTrue;
+
 import java.util.Date;
 import java.util.Queue;
 import java.util.concurrent.Callable;
@@ -13,6 +15,7 @@ import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.junit.After;
 import org.junit.Test;
@@ -85,6 +88,87 @@ public class ConcurrentArrayQueueThroughputTest {
 		}
 	}
 
+	/*
+	 * A tiny array makes every slot go through many laps at once, with
+	 * producers and consumers of different laps on the same slot. Every item
+	 * must be taken exactly once.
+	 */
+
+	@Test
+	public void testWrapAround() throws InterruptedException {
+
+		System.out.println("ConcurrentArrayQueue wrap around");
+
+		final Queue<Integer> queue = new ConcurrentArrayQueue<Integer>(2);
+		final CountDownLatch latch = new CountDownLatch(1);
+		final AtomicInteger produced = new AtomicInteger(0);
+		final AtomicInteger consumed = new AtomicInteger(0);
+		final AtomicLong sum = new AtomicLong(0);
+		final int count = max / 100;
+
+		for (int i = 0; i < producers; ++i) {
+			service.submit(new Callable<String>() {
+
+				@Override
+				public String call() throws Exception {
+
+					latch.await();
+
+					int num;
+					while ((num = produced.getAndIncrement()) < count) {
+						while (!queue.offer(num)) {
+							Thread.yield();
+						}
+					}
+
+					return null;
+				}
+			});
+		}
+
+		for (int i = 0; i < consumers; ++i) {
+			service.submit(new Callable<String>() {
+
+				@Override
+				public String call() throws Exception {
+
+					latch.await();
+
+					while (consumed.get() < count) {
+
+						Integer num = queue.poll();
+
+						if (num == null) {
+							Thread.yield();
+							continue;
+						}
+
+						sum.addAndGet(num);
+						consumed.incrementAndGet();
+					}
+
+					return null;
+				}
+			});
+		}
+
+		latch.countDown();
+
+		for (int i = producers + consumers; i != 0; --i) {
+
+			Future<String> future = service.take();
+			try {
+				future.get();
+			} catch (ExecutionException e) {
+				throw LaunderThrowable.launderThrowable(e.getCause());
+			}
+		}
+
+		assertTrue(consumed.get() == count);
+		assertTrue(sum.get() == (long) count * (count - 1) / 2);
+		assertTrue(queue.isEmpty() && queue.poll() == null);
+	}
+
 	@Test
 	public void benchmark() throws InterruptedException {
 		System.out.println("ConcurrentLinkedQueue");
@@ -0,0 +1,288 @@
+package queue;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.reflect.Field;
+import java.util.Date;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+import org.junit.After;
+import org.junit.Test;
+
+/*
+ * Consistency and throughput testing of ConcurrentLinkedArrayQueue with 4, 8
+ * and 16 threads, half of them producers and half of them consumers, using
+ * ConcurrentLinkedQueue as benchmark. Every item must be taken exactly once.
+ *
+ * A producer stalled after taking its index must hold up no consumer.
+ *
+ * */
+
+public class ConcurrentLinkedArrayQueueThroughputTest {
+
+	/* chunk size to use in testing, small enough to recycle chunks all the time */
+	private final static int chunk = 16;
+
+	/* number of items to use in testing */
+	private final static int max = Integer.MAX_VALUE / 1000;
+
+	/* numbers of threads to use in testing */
+	private final static int[] threads = { 4, 8, 16 };
+
+	/* thread management */
+	private final ExecutorService executorService = Executors
+			.newCachedThreadPool();
+	private final CompletionService<String> service = new ExecutorCompletionService<String>(
+			executorService);
+
+	@After
+	public void cleanup() throws InterruptedException {
+
+		executorService.shutdown();
+		if (!executorService.awaitTermination(10, TimeUnit.SECONDS)) {
+			throw new IllegalStateException();
+		}
+	}
+
+	@Test
+	public void testQueue() throws InterruptedException {
+		test(() -> new ConcurrentLinkedArrayQueue<Integer>());
+	}
+
+	@Test
+	public void testRecycling() throws InterruptedException {
+		test(() -> new ConcurrentLinkedArrayQueue<Integer>(chunk));
+	}
+
+	@Test
+	public void benchmark() throws InterruptedException {
+		test(() -> new ConcurrentLinkedQueue<Integer>());
+	}
+
+	/* FIFO across chunks, growing and shrinking back, from a single thread */
+
+	@Test
+	public void testOrder() {
+
+		ConcurrentLinkedArrayQueue<Integer> queue = new ConcurrentLinkedArrayQueue<Integer>(
+				chunk);
+		int put = 0;
+		int take = 0;
+
+		for (int round = 1; round <= 10; ++round) {
+
+			for (int i = 0; i < round * chunk + 3; ++i) {
+				assertTrue(queue.offer(put++));
+			}
+
+			assertTrue(queue.size() == put - take);
+
+			while (take != put) {
+				assertTrue(queue.poll() == take++);
+			}
+
+			assertTrue(queue.poll() == null && queue.isEmpty());
+		}
+	}
+
+	/* a producer takes its index, and never writes */
+
+	@Test
+	public void testStalledProducer() throws Exception {
+
+		final ConcurrentLinkedArrayQueue<Integer> queue = new ConcurrentLinkedArrayQueue<Integer>(
+				chunk);
+		putIndex(queue).getAndAdd(1);
+
+		run(() -> {
+
+			/* index 0 is given up, and its chunk stays until it is back */
+
+			for (int i = 0; i < 3 * chunk; ++i) {
+				assertTrue(queue.offer(i));
+				assertEquals(i, (int) queue.poll());
+			}
+
+			assertNull(queue.poll());
+			assertTrue(queue.isEmpty());
+		});
+	}
+
+	/* a stalled producer comes back after its consumer gave the index up */
+
+	@Test
+	public void testProducerBack() throws Exception {
+
+		final ConcurrentLinkedArrayQueue<Integer> queue = new ConcurrentLinkedArrayQueue<Integer>(
+				chunk);
+		final PaddedIndex putIndex = putIndex(queue);
+		putIndex.getAndAdd(1);
+
+		run(() -> {
+
+			assertNull(queue.poll());
+
+			/* back to index 0, found TAKEN, the item goes to index 1 */
+
+			putIndex.getAndAdd(-1);
+
+			for (int i = 0; i < 3 * chunk; ++i) {
+				assertTrue(queue.offer(i));
+				assertEquals(i, (int) queue.poll());
+			}
+
+			assertNull(queue.poll());
+			assertTrue(queue.isEmpty());
+		});
+	}
+
+	/* runs task on a thread of its own, failing if it does not end in time */
+	private void run(Runnable task) throws Exception {
+
+		Future<?> future = executorService.submit(task);
+		try {
+			future.get(10, TimeUnit.SECONDS);
+		} catch (ExecutionException e) {
+			throw LaunderThrowable.launderThrowable(e.getCause());
+		} catch (TimeoutException e) {
+			future.cancel(true);
+			throw new AssertionError("held up by the stalled thread");
+		}
+	}
+
+	private static PaddedIndex putIndex(ConcurrentLinkedArrayQueue<?> queue)
+			throws Exception {
+
+		Field field = ConcurrentLinkedArrayQueue.class
+				.getDeclaredField("putIndex");
+		field.setAccessible(true);
+		return (PaddedIndex) field.get(queue);
+	}
+
+	private void test(Supplier<Queue<Integer>> supplier)
+			throws InterruptedException {
+
+		for (int n : threads) {
+
+			final Queue<Integer> queue = supplier.get();
+			final CountDownLatch latch = new CountDownLatch(1);
+			final AtomicInteger produced = new AtomicInteger(0);
+			final AtomicInteger consumed = new AtomicInteger(0);
+			final AtomicLong sum = new AtomicLong(0);
+
+			/* Multiple producers, multiple consumers */
+
+			for (int i = 0; i < n / 2; ++i) {
+				service.submit(new Producer(queue, latch, produced));
+				service.submit(new Consumer(queue, latch, consumed, sum));
+			}
+
+			long begin = new Date().getTime();
+			latch.countDown();
+
+			for (int i = n; i != 0; --i) {
+
+				Future<String> future = service.take();
+				try {
+					future.get();
+				} catch (ExecutionException e) {
+					throw LaunderThrowable.launderThrowable(e.getCause());
+				}
+			}
+
+			System.out.println(queue.getClass().getSimpleName() + " " + n
+					+ " threads:" + (new Date().getTime() - begin));
+
+			assertTrue(sum.get() == (long) max * (max - 1) / 2);
+			assertTrue(queue.isEmpty());
+		}
+	}
+
+	private static class Producer implements Callable<String> {
+
+		private final Queue<Integer> queue;
+		private final CountDownLatch event;
+		private final AtomicInteger count;
+
+		Producer(Queue<Integer> queue, CountDownLatch event, AtomicInteger count) {
+			this.queue = queue;
+			this.event = event;
+			this.count = count;
+		}
+
+		@Override
+		public String call() throws Exception {
+
+			event.await();
+
+			while (true) {
+
+				int num = count.getAndIncrement();
+				if (num >= max) {
+					break;
+				}
+
+				assertTrue(queue.offer(num));
+			}
+
+			return null;
+		}
+	}
+
+	private static class Consumer implements Callable<String> {
+
+		private final Queue<Integer> queue;
+		private final CountDownLatch event;
+		private final AtomicInteger count;
+		private final AtomicLong sum;
+
+		Consumer(Queue<Integer> queue, CountDownLatch event,
+				AtomicInteger count, AtomicLong sum) {
+			this.queue = queue;
+			this.event = event;
+			this.count = count;
+			this.sum = sum;
+		}
+
+		@Override
+		public String call() throws Exception {
+
+			long total = 0;
+			event.await();
+
+			while (count.get() < max) {
+
+				Integer num = queue.poll();
+
+				if (num == null) {
+					/* if queue is empty */
+					Thread.yield();
+					continue;
+				}
+
+				total += num;
+				count.incrementAndGet();
+			}
+
+			sum.addAndGet(total);
+
+			return null;
+		}
+	}
+}
@@ -0,0 +1,268 @@
+package queue;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.reflect.Field;
+import java.util.Date;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+import org.junit.After;
+import org.junit.Test;
+
+/*
+ * Scaling test: throughput as the number of producers and consumers grows from
+ * 1 to 16 each, using ConcurrentArrayQueue and
+ * java.util.concurrent.ConcurrentLinkedQueue as benchmark. Every item must be
+ * taken exactly once.
+ *
+ * A producer or a consumer stalled after taking its index must hold up nobody.
+ *
+ * */
+
+public class FetchAddArrayQueueThroughputTest {
+
+	/* size of the array to use in testing */
+	private final static int size = 400;
+
+	/* number of items to use in testing, for each number of threads */
+	private final static int max = Integer.MAX_VALUE / 1000;
+
+	/* numbers of producers, and of consumers, to use in testing */
+	private final static int[] threads = { 1, 2, 4, 8, 16 };
+
+	/* thread management */
+	private final ExecutorService executorService = Executors
+			.newCachedThreadPool();
+	private final CompletionService<String> service = new ExecutorCompletionService<String>(
+			executorService);
+
+	@After
+	public void cleanup() throws InterruptedException {
+
+		executorService.shutdown();
+		if (!executorService.awaitTermination(10, TimeUnit.SECONDS)) {
+			throw new IllegalStateException();
+		}
+	}
+
+	@Test
+	public void testQueue() throws InterruptedException {
+		test(() -> new FetchAddArrayQueue<Integer>(size));
+	}
+
+	/* slots go through many laps, with threads of different laps on each */
+
+	@Test
+	public void testWrapAround() throws InterruptedException {
+		test(() -> new FetchAddArrayQueue<Integer>(2));
+	}
+
+	/* a producer takes its permit and its index, and never writes */
+
+	@Test
+	public void testStalledProducer() throws Exception {
+
+		final FetchAddArrayQueue<Integer> queue = new FetchAddArrayQueue<Integer>(
+				2);
+		index(queue, "free").getAndAdd(-1);
+		index(queue, "putIndex").getAndAdd(1);
+
+		run(() -> {
+
+			/* the consumer of index 0 gives it up, and moves on */
+
+			for (int i = 0; i < 10; ++i) {
+				assertTrue(queue.offer(i));
+				assertEquals(i, (int) queue.poll());
+			}
+
+			assertNull(queue.poll());
+		});
+	}
+
+	/* a consumer takes its permit and its index, and never reads */
+
+	@Test
+	public void testStalledConsumer() throws Exception {
+
+		final FetchAddArrayQueue<Integer> queue = new FetchAddArrayQueue<Integer>(
+				2);
+		assertTrue(queue.offer(-1));
+		index(queue, "available").getAndAdd(-1);
+		index(queue, "takeIndex").getAndAdd(1);
+
+		run(() -> {
+
+			/* the slot of index 0 stays FULL, every lap skips it */
+
+			for (int i = 0; i < 10; ++i) {
+				assertTrue(queue.offer(i));
+				assertEquals(i, (int) queue.poll());
+			}
+
+			assertNull(queue.poll());
+		});
+	}
+
+	@Test
+	public void benchmark() throws InterruptedException {
+		test(() -> new ConcurrentArrayQueue<Integer>(size));
+	}
+
+	@Test
+	public void benchmarkLinked() throws InterruptedException {
+		test(() -> new ConcurrentLinkedQueue<Integer>());
+	}
+
+	/* runs task on a thread of its own, failing if it does not end in time */
+	private void run(Runnable task) throws Exception {
+
+		Future<?> future = executorService.submit(task);
+		try {
+			future.get(10, TimeUnit.SECONDS);
+		} catch (ExecutionException e) {
+			throw LaunderThrowable.launderThrowable(e.getCause());
+		} catch (TimeoutException e) {
+			future.cancel(true);
+			throw new AssertionError("held up by the stalled thread");
+		}
+	}
+
+	private static PaddedIndex index(FetchAddArrayQueue<?> queue, String name)
+			throws Exception {
+
+		Field field = FetchAddArrayQueue.class.getDeclaredField(name);
+		field.setAccessible(true);
+		return (PaddedIndex) field.get(queue);
+	}
+
+	private void test(Supplier<Queue<Integer>> supplier)
+			throws InterruptedException {
+
+		for (int n : threads) {
+
+			final Queue<Integer> queue = supplier.get();
+			final CountDownLatch latch = new CountDownLatch(1);
+			final AtomicInteger produced = new AtomicInteger(0);
+			final AtomicInteger consumed = new AtomicInteger(0);
+			final AtomicLong sum = new AtomicLong(0);
+
+			/* Multiple producers, multiple consumers */
+
+			for (int i = 0; i < n; ++i) {
+				service.submit(new Producer(queue, latch, produced));
+				service.submit(new Consumer(queue, latch, consumed, sum));
+			}
+
+			long begin = new Date().getTime();
+			latch.countDown();
+
+			for (int i = 2 * n; i != 0; --i) {
+
+				Future<String> future = service.take();
+				try {
+					future.get();
+				} catch (ExecutionException e) {
+					throw LaunderThrowable.launderThrowable(e.getCause());
+				}
+			}
+
+			System.out.println(queue.getClass().getSimpleName() + " " + n
+					+ "x" + n + ":" + (new Date().getTime() - begin));
+
+			assertTrue(sum.get() == (long) max * (max - 1) / 2);
+			assertTrue(queue.poll() == null);
+		}
+	}
+
+	private static class Producer implements Callable<String> {
+
+		private final Queue<Integer> queue;
+		private final CountDownLatch event;
+		private final AtomicInteger count;
+
+		Producer(Queue<Integer> queue, CountDownLatch event, AtomicInteger count) {
+			this.queue = queue;
+			this.event = event;
+			this.count = count;
+		}
+
+		@Override
+		public String call() throws Exception {
+
+			event.await();
+
+			while (true) {
+
+				int num = count.getAndIncrement();
+				if (num >= max) {
+					break;
+				}
+
+				while (!queue.offer(num)) {
+					/* if queue is full */
+					Thread.yield();
+				}
+			}
+
+			return null;
+		}
+	}
+
+	private static class Consumer implements Callable<String> {
+
+		private final Queue<Integer> queue;
+		private final CountDownLatch event;
+		private final AtomicInteger count;
+		private final AtomicLong sum;
+
+		Consumer(Queue<Integer> queue, CountDownLatch event,
+				AtomicInteger count, AtomicLong sum) {
+			this.queue = queue;
+			this.event = event;
+			this.count = count;
+			this.sum = sum;
+		}
+
+		@Override
+		public String call() throws Exception {
+
+			long total = 0;
+			event.await();
+
+			while (count.get() < max) {
+
+				Integer num = queue.poll();
+
+				if (num == null) {
+					/* if queue is empty */
+					Thread.yield();
+					continue;
+				}
+
+				total += num;
+				count.incrementAndGet();
+			}
+
+			sum.addAndGet(total);
+
+			return null;
+		}
+	}
+}
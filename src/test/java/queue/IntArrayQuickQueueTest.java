@@ -0,0 +1,217 @@
+package queue;
+
+import static org.junit.Assert.assertTrue;
+
+import java.util.Date;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Test;
+
+/*
+ * Consistency and throughput testing of IntArrayQuickQueue and
+ * IntArrayQuickBlockingQueue.
+ *
+ * The producer alternates single and bulk offers, the consumer alternates
+ * single and bulk polls, and the consumer checks the order of items. With the
+ * blocking queue, the single operations are put() and take().
+ *
+ * */
+
+public class IntArrayQuickQueueTest {
+
+	/* size of the array to use in testing */
+	private final static int size = 100;
+
+	/* number of items moved by one bulk operation */
+	private final static int batch = 64;
+
+	/* number of items to use in testing */
+	private final static int max = Integer.MAX_VALUE / 100;
+
+	/* for thread management */
+	private final ExecutorService executorService = Executors
+			.newCachedThreadPool();
+	private final CompletionService<String> service = new ExecutorCompletionService<String>(
+			executorService);
+
+	private final CountDownLatch start = new CountDownLatch(1);
+
+	@Test
+	public void testQueue() throws InterruptedException {
+
+		System.out.println("IntArrayQuickQueue");
+
+		run(new IntArrayQuickQueue(size));
+	}
+
+	@Test
+	public void testBlockingQueue() throws InterruptedException {
+
+		System.out.println("IntArrayQuickBlockingQueue");
+
+		run(new IntArrayQuickBlockingQueue(size));
+	}
+
+	private void run(IntArrayQuickQueue queue) throws InterruptedException {
+
+		/* single producer, single consumer */
+
+		service.submit(new Producer(queue));
+		service.submit(new Consumer(queue));
+
+		start.countDown();
+
+		int count = 2;
+		while (count != 0) {
+
+			Future<String> future = service.take();
+			try {
+				String msg = future.get();
+				System.out.println(msg);
+				--count;
+			} catch (ExecutionException e) {
+				throw LaunderThrowable.launderThrowable(e.getCause());
+			}
+		}
+	}
+
+	@After
+	public void cleanup() throws InterruptedException {
+
+		executorService.shutdown();
+		if (!executorService.awaitTermination(10, TimeUnit.SECONDS)) {
+			throw new IllegalStateException();
+		}
+	}
+
+	private class Producer implements Callable<String> {
+
+		private final IntArrayQuickQueue queue;
+
+		Producer(IntArrayQuickQueue queue) {
+			this.queue = queue;
+		}
+
+		@Override
+		public String call() throws Exception {
+
+			int[] src = new int[batch];
+			boolean bulk = false;
+			int num = 0;
+
+			String name = Thread.currentThread().getName();
+			start.await();
+
+			long begin = new Date().getTime();
+
+			while (num != max) {
+
+				if (Thread.interrupted()) {
+					throw new InterruptedException();
+				}
+
+				int n;
+
+				if (bulk) {
+					int len = Math.min(batch, max - num);
+					for (int i = 0; i < len; ++i) {
+						src[i] = num + i;
+					}
+					n = queue.offer(src, 0, len);
+				} else if (queue instanceof IntArrayQuickBlockingQueue) {
+					((IntArrayQuickBlockingQueue) queue).put(num);
+					n = 1;
+				} else {
+					n = queue.offer(num) ? 1 : 0;
+				}
+
+				num += n;
+
+				if (n == 0) {
+					/* If queue is full */
+					Thread.yield();
+				}
+
+				bulk = !bulk;
+			}
+
+			return name + ":" + (new Date().getTime() - begin);
+		}
+	}
+
+	private class Consumer implements Callable<String> {
+
+		private final IntArrayQuickQueue queue;
+
+		Consumer(IntArrayQuickQueue queue) {
+			this.queue = queue;
+		}
+
+		private int prev = -1;
+
+		private void check(int cur) {
+
+			/* cur = prev + 1 */
+
+			assertTrue("[" + cur + "] should follow [" + prev + "]",
+					cur == (prev + 1));
+			prev = cur;
+		}
+
+		@Override
+		public String call() throws Exception {
+
+			int[] dst = new int[batch];
+			boolean bulk = false;
+
+			String name = Thread.currentThread().getName();
+			start.await();
+
+			long begin = new Date().getTime();
+
+			while (prev != max - 1) {
+
+				if (Thread.interrupted()) {
+					throw new InterruptedException();
+				}
+
+				int n;
+
+				if (bulk) {
+					n = queue.poll(dst, 0, batch);
+					for (int i = 0; i < n; ++i) {
+						check(dst[i]);
+					}
+				} else if (queue instanceof IntArrayQuickBlockingQueue) {
+					check(((IntArrayQuickBlockingQueue) queue).take());
+					n = 1;
+				} else {
+					int cur = queue.poll();
+					n = 0;
+					if (cur != queue.missingValue()) {
+						check(cur);
+						n = 1;
+					}
+				}
+
+				if (n == 0) {
+					/* If queue is empty */
+					Thread.yield();
+				}
+
+				bulk = !bulk;
+			}
+
+			return name + ":" + (new Date().getTime() - begin);
+		}
+	}
+}
@@ -0,0 +1,412 @@
+package queue;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.util.Date;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Test;
+
+/*
+ * Consistency, recovery and throughput testing of JournalBlockingQueue.
+ *
+ * Segments are kept small, so that the journal rolls over to new segments and
+ * deletes consumed ones all along.
+ *
+ * */
+
+public class JournalBlockingQueueTest {
+
+	/* capacity of the queue to use in testing */
+	private final static int size = 100;
+
+	/* size of the segment files to use in testing */
+	private final static int segmentSize = 64 * 1024;
+
+	/* number of items to use in testing */
+	private final static int max = Integer.MAX_VALUE / 1000;
+
+	/* number of producers in the group commit test */
+	private final static int producers = 4;
+
+	/* number of items per producer in the group commit test */
+	private final static int perProducer = 500;
+
+	/* item n of producer p is p * stride + n */
+	private final static int stride = 1 << 24;
+
+	private final static JournalBlockingQueue.Codec<Integer> codec = new JournalBlockingQueue.Codec<Integer>() {
+
+		@Override
+		public byte[] encode(Integer e) {
+			return ByteBuffer.allocate(4).putInt(e).array();
+		}
+
+		@Override
+		public Integer decode(byte[] data) {
+			return ByteBuffer.wrap(data).getInt();
+		}
+	};
+
+	/* for thread management */
+	private final ExecutorService executorService = Executors
+			.newCachedThreadPool();
+	private final CompletionService<String> service = new ExecutorCompletionService<String>(
+			executorService);
+
+	private final CountDownLatch start = new CountDownLatch(1);
+
+	private final File dir = dir();
+
+	private static File dir() {
+		try {
+			File dir = File.createTempFile("journal", "");
+			dir.delete();
+			return dir;
+		} catch (IOException e) {
+			throw LaunderThrowable.launderThrowable(e);
+		}
+	}
+
+	@Test
+	public void testQueue() throws InterruptedException, IOException {
+
+		System.out.println("JournalBlockingQueue");
+
+		JournalBlockingQueue<Integer> queue = new JournalBlockingQueue<Integer>(
+				dir, size, codec, JournalBlockingQueue.Durability.NONE,
+				segmentSize);
+
+		/* single producer, single consumer */
+
+		service.submit(new Producer(queue, 0, max));
+		service.submit(new Consumer(queue, 1, max));
+
+		start.countDown();
+		await(2);
+
+		queue.close();
+
+		/* every segment but the last one has been deleted */
+
+		assertTrue(dir.list().length <= 3);
+	}
+
+	@Test
+	public void testRecovery() throws IOException {
+
+		JournalBlockingQueue<Integer> queue = new JournalBlockingQueue<Integer>(
+				dir, 10000, codec, JournalBlockingQueue.Durability.BATCH,
+				segmentSize);
+
+		for (int i = 0; i < 10000; ++i) {
+			assertTrue(queue.offer(i));
+		}
+
+		for (int i = 0; i < 3000; ++i) {
+			assertEquals(i, (int) queue.poll());
+		}
+
+		queue.close();
+
+		/* reopen, with a segment size that is ignored */
+
+		queue = new JournalBlockingQueue<Integer>(dir, 10000, codec,
+				JournalBlockingQueue.Durability.BATCH, 1024);
+		assertEquals(7000, queue.size());
+
+		for (int i = 3000; i < 5000; ++i) {
+			assertEquals(i, (int) queue.poll());
+		}
+
+		for (int i = 10000; i < 12000; ++i) {
+			assertTrue(queue.offer(i));
+		}
+
+		queue.close();
+
+		queue = new JournalBlockingQueue<Integer>(dir, 10000, codec);
+		assertEquals(7000, queue.size());
+
+		for (int i = 5000; i < 12000; ++i) {
+			assertEquals(i, (int) queue.poll());
+		}
+
+		assertNull(queue.poll());
+		queue.close();
+	}
+
+	@Test
+	public void testExactFit() throws IOException {
+
+		/* segments of 4 records of 12 bytes, with no room for END_OF_SEGMENT */
+
+		JournalBlockingQueue<Integer> queue = new JournalBlockingQueue<Integer>(
+				dir, size, codec, JournalBlockingQueue.Durability.NONE, 4 * 12);
+
+		for (int i = 0; i < size; ++i) {
+			assertTrue(queue.offer(i));
+			assertEquals(i, (int) queue.poll());
+		}
+
+		/* every segment consumed has been deleted */
+
+		int segments = 0;
+		for (String name : dir.list()) {
+			if (name.endsWith(JournalBlockingQueue.SEGMENT_SUFFIX)) {
+				++segments;
+			}
+		}
+
+		assertEquals(0, segments);
+		queue.close();
+	}
+
+	@Test
+	public void testTornRecord() throws IOException {
+
+		JournalBlockingQueue<Integer> queue = new JournalBlockingQueue<Integer>(
+				dir, size, codec, JournalBlockingQueue.Durability.NONE,
+				segmentSize);
+
+		for (int i = 0; i < 3; ++i) {
+			assertTrue(queue.offer(i));
+		}
+
+		queue.close();
+
+		/* corrupt the last item of the first segment */
+
+		RandomAccessFile raf = new RandomAccessFile(new File(dir, String.format(
+				"%020d%s", 0, JournalBlockingQueue.SEGMENT_SUFFIX)), "rw");
+		try {
+			raf.seek(2 * 12 + JournalBlockingQueue.RECORD_HEADER);
+			raf.write(0x7f);
+		} finally {
+			raf.close();
+		}
+
+		queue = new JournalBlockingQueue<Integer>(dir, size, codec);
+		assertEquals(2, queue.size());
+
+		/* the next item takes the place of the torn one */
+
+		assertTrue(queue.offer(3));
+
+		for (int i : new int[] { 0, 1, 3 }) {
+			assertEquals(i, (int) queue.poll());
+		}
+
+		assertNull(queue.poll());
+		queue.close();
+	}
+
+	@Test
+	public void testGroupCommit() throws InterruptedException, IOException {
+
+		System.out.println("JournalBlockingQueue SYNC, " + producers
+				+ " producers");
+
+		JournalBlockingQueue<Integer> queue = new JournalBlockingQueue<Integer>(
+				dir, size, codec, JournalBlockingQueue.Durability.SYNC,
+				segmentSize);
+
+		/* multiple producers, single consumer */
+
+		for (int p = 0; p < producers; ++p) {
+			service.submit(new Producer(queue, p * stride, p * stride
+					+ perProducer));
+		}
+		service.submit(new Consumer(queue, producers, producers
+				* perProducer));
+
+		start.countDown();
+		await(producers + 1);
+
+		queue.close();
+	}
+
+	/* SYNC, with producers that fill segments exactly */
+
+	@Test
+	public void testExactFitSync() throws InterruptedException, IOException {
+
+		Set<Long> forced = new ConcurrentSkipListSet<Long>();
+		JournalBlockingQueue<Integer> queue = forcing(
+				JournalBlockingQueue.Durability.SYNC, forced);
+
+		for (int p = 0; p < producers; ++p) {
+			service.submit(new Producer(queue, p * stride, p * stride
+					+ perProducer));
+		}
+
+		start.countDown();
+		await(producers);
+
+		assertForced(forced, producers * perProducer);
+		queue.close();
+	}
+
+	/* BATCH, whose batches end in a later segment than they started in */
+
+	@Test
+	public void testExactFitBatch() throws IOException {
+
+		Set<Long> forced = new ConcurrentSkipListSet<Long>();
+		JournalBlockingQueue<Integer> queue = forcing(
+				JournalBlockingQueue.Durability.BATCH, forced);
+
+		for (int i = 0; i < 2 * JournalBlockingQueue.BATCH_SIZE; ++i) {
+			assertTrue(queue.offer(i));
+		}
+
+		assertForced(forced, 2 * JournalBlockingQueue.BATCH_SIZE);
+		queue.close();
+	}
+
+	/*
+	 * A queue of segments of 64 records of 12 bytes, with no room for
+	 * END_OF_SEGMENT, that records the segments forced.
+	 */
+	private JournalBlockingQueue<Integer> forcing(
+			JournalBlockingQueue.Durability durability, final Set<Long> forced)
+			throws IOException {
+
+		return new JournalBlockingQueue<Integer>(dir, Integer.MAX_VALUE, codec,
+				durability, 64 * 12) {
+
+			@Override
+			void forceSegment(long number) {
+				forced.add(number);
+				super.forceSegment(number);
+			}
+		};
+	}
+
+	/* every segment holding one of the items put has been forced */
+	private static void assertForced(Set<Long> forced, int items) {
+		for (long n = 0; n <= (items * 12 - 1) / (64 * 12); ++n) {
+			assertTrue("segment " + n, forced.contains(n));
+		}
+	}
+
+	private void await(int count) throws InterruptedException {
+
+		while (count != 0) {
+
+			Future<String> future = service.take();
+			try {
+				String msg = future.get();
+				System.out.println(msg);
+				--count;
+			} catch (ExecutionException e) {
+				throw LaunderThrowable.launderThrowable(e.getCause());
+			}
+		}
+	}
+
+	@After
+	public void cleanup() throws InterruptedException {
+
+		executorService.shutdown();
+		if (!executorService.awaitTermination(10, TimeUnit.SECONDS)) {
+			throw new IllegalStateException();
+		}
+
+		File[] files = dir.listFiles();
+		if (files != null) {
+			for (File file : files) {
+				file.delete();
+			}
+		}
+		dir.delete();
+	}
+
+	private class Producer implements Callable<String> {
+
+		private final BlockingQueue<Integer> queue;
+		private final int from;
+		private final int to;
+
+		Producer(BlockingQueue<Integer> queue, int from, int to) {
+			this.queue = queue;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		public String call() throws Exception {
+
+			String name = Thread.currentThread().getName();
+			start.await();
+
+			long begin = new Date().getTime();
+
+			for (int num = from; num != to; ++num) {
+				queue.put(num);
+			}
+
+			return name + ":" + (new Date().getTime() - begin);
+		}
+	}
+
+	/* checks the order of the items of each producer */
+
+	private class Consumer implements Callable<String> {
+
+		private final BlockingQueue<Integer> queue;
+		private final int[] prev;
+		private final int count;
+
+		Consumer(BlockingQueue<Integer> queue, int producers, int count) {
+			this.queue = queue;
+			this.prev = new int[producers];
+			this.count = count;
+		}
+
+		@Override
+		public String call() throws Exception {
+
+			for (int p = 0; p < prev.length; ++p) {
+				prev[p] = p * stride - 1;
+			}
+
+			String name = Thread.currentThread().getName();
+			start.await();
+
+			long begin = new Date().getTime();
+
+			for (int i = 0; i < count; ++i) {
+
+				int cur = queue.take();
+				int p = cur / stride;
+
+				/* cur = prev + 1 */
+
+				assertTrue("[" + cur + "] should follow [" + prev[p] + "]",
+						cur == (prev[p] + 1));
+				prev[p] = cur;
+			}
+
+			return name + ":" + (new Date().getTime() - begin);
+		}
+	}
+}
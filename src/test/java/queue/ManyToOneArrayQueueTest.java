@@ -0,0 +1,241 @@
+package queue;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Test;
+
+/*
+ * Consistency and throughput testing of ManyToOneArrayQueue and
+ * ManyToOneArrayBlockingQueue. Items of a producer must reach the consumer in
+ * the order it added them.
+ *
+ * */
+
+public class ManyToOneArrayQueueTest {
+
+	/* size of the array to use in testing */
+	private final static int size = 1024;
+
+	/* number of items to use in testing, per producer */
+	private final static int max = Integer.MAX_VALUE / 10000;
+
+	/* number of producers to use in testing */
+	private final static int producers = 4;
+
+	/* for thread management */
+	private final ExecutorService executorService = Executors
+			.newCachedThreadPool();
+	private final CompletionService<String> service = new ExecutorCompletionService<String>(
+			executorService);
+
+	@After
+	public void cleanup() throws InterruptedException {
+
+		executorService.shutdown();
+		if (!executorService.awaitTermination(10, TimeUnit.SECONDS)) {
+			/* if executor failed to shutdown gracefully */
+			throw new IllegalStateException();
+		}
+	}
+
+	@Test
+	public void testQueue() throws InterruptedException {
+
+		System.out.println("ManyToOneArrayQueue");
+
+		final ManyToOneArrayQueue<Integer> queue = new ManyToOneArrayQueue<Integer>(
+				size);
+		final CountDownLatch latch = new CountDownLatch(1);
+
+		for (int i = 0; i < producers; ++i) {
+			final int id = i;
+			service.submit(new Callable<String>() {
+
+				@Override
+				public String call() throws Exception {
+
+					int num = 0;
+					latch.await();
+
+					while (num != max) {
+						while (!queue.offer(num * producers + id)) {
+							/* if queue is full */
+							Thread.yield();
+						}
+						++num;
+					}
+
+					return null;
+				}
+			});
+		}
+
+		/* the consumer drains in batches */
+
+		service.submit(new Callable<String>() {
+
+			@Override
+			public String call() throws Exception {
+
+				final Checker checker = new Checker();
+				String name = Thread.currentThread().getName();
+				latch.await();
+				long begin = new Date().getTime();
+
+				while (checker.count != max * producers) {
+					if (queue.drain(checker::check, size) == 0) {
+						Thread.yield();
+					}
+				}
+
+				assertNull(queue.poll());
+
+				return name + ":" + (new Date().getTime() - begin);
+			}
+		});
+
+		latch.countDown();
+		await(producers + 1);
+	}
+
+	@Test
+	public void testBlockingQueue() throws InterruptedException {
+
+		System.out.println("ManyToOneArrayBlockingQueue");
+
+		timeouts(new ManyToOneArrayBlockingQueue<Integer>(1));
+
+		final ManyToOneArrayBlockingQueue<Integer> queue = new ManyToOneArrayBlockingQueue<Integer>(
+				size);
+		final CountDownLatch latch = new CountDownLatch(1);
+
+		for (int i = 0; i < producers; ++i) {
+			final int id = i;
+			service.submit(new Callable<String>() {
+
+				@Override
+				public String call() throws Exception {
+
+					int num = 0;
+					latch.await();
+
+					while (num != max) {
+						queue.put(num * producers + id);
+						++num;
+					}
+
+					return null;
+				}
+			});
+		}
+
+		/* the consumer takes, and drains whatever is there */
+
+		service.submit(new Callable<String>() {
+
+			@Override
+			public String call() throws Exception {
+
+				final Checker checker = new Checker();
+				final List<Integer> list = new ArrayList<Integer>(size);
+				String name = Thread.currentThread().getName();
+				latch.await();
+				long begin = new Date().getTime();
+
+				while (checker.count != max * producers) {
+
+					checker.check(queue.take());
+					queue.drainTo(list);
+
+					for (Integer cur : list) {
+						checker.check(cur);
+					}
+
+					list.clear();
+				}
+
+				return name + ":" + (new Date().getTime() - begin);
+			}
+		});
+
+		latch.countDown();
+		await(producers + 1);
+	}
+
+	private void await(int count) throws InterruptedException {
+
+		while (count != 0) {
+
+			try {
+
+				Future<String> future = service.take();
+				String msg = future.get();
+				if (msg != null) {
+					System.out.println(msg);
+				}
+				--count;
+
+			} catch (ExecutionException e) {
+				throw LaunderThrowable.launderThrowable(e.getCause());
+			}
+		}
+	}
+
+	private void timeouts(BlockingQueue<Integer> queue)
+			throws InterruptedException {
+
+		final long timeout = 50;
+
+		long begin = System.nanoTime();
+		assertNull(queue.poll(timeout, TimeUnit.MILLISECONDS));
+		assertTrue(System.nanoTime() - begin >= TimeUnit.MILLISECONDS
+				.toNanos(timeout));
+
+		assertTrue(queue.offer(0, timeout, TimeUnit.MILLISECONDS));
+
+		begin = System.nanoTime();
+		assertFalse(queue.offer(1, timeout, TimeUnit.MILLISECONDS));
+		assertTrue(System.nanoTime() - begin >= TimeUnit.MILLISECONDS
+				.toNanos(timeout));
+
+		assertTrue(queue.take() == 0);
+	}
+
+	/* the next item expected from each producer */
+
+	private static class Checker {
+
+		private final int[] next = new int[producers];
+		private int count;
+
+		void check(int cur) {
+
+			int id = cur % producers;
+			int num = cur / producers;
+
+			/* num = next[id] */
+
+			assertTrue("[" + num + "] should be [" + next[id] + "]",
+					num == next[id]);
+			++next[id];
+			++count;
+		}
+	}
+}
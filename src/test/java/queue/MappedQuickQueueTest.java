@@ -0,0 +1,234 @@
+package queue;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.util.Date;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Test;
+
+/*
+ * Consistency and throughput testing of MappedQuickQueue.
+ *
+ * The producer and the consumer map the file on their own, through create()
+ * and attach(), the way two processes would.
+ *
+ * */
+
+public class MappedQuickQueueTest {
+
+	/* size of the ring to use in testing */
+	private final static int size = 64 * 1024;
+
+	/* length of the messages to use in testing */
+	private final static int length = 32;
+
+	/* number of messages to use in testing */
+	private final static int max = Integer.MAX_VALUE / 100;
+
+	/* for thread management */
+	private final ExecutorService executorService = Executors
+			.newCachedThreadPool();
+	private final CompletionService<String> service = new ExecutorCompletionService<String>(
+			executorService);
+
+	private final CountDownLatch start = new CountDownLatch(1);
+
+	private final File file = file();
+
+	/* in memory if possible */
+	private static File file() {
+
+		File shm = new File("/dev/shm");
+		try {
+			File file = shm.isDirectory() && shm.canWrite() ? File
+					.createTempFile("queue", ".q", shm) : File.createTempFile(
+					"queue", ".q");
+			file.deleteOnExit();
+			return file;
+		} catch (IOException e) {
+			throw LaunderThrowable.launderThrowable(e);
+		}
+	}
+
+	@Test
+	public void testQueue() throws InterruptedException, IOException {
+
+		System.out.println("MappedQuickQueue " + file);
+
+		MappedQuickQueue producer = MappedQuickQueue.create(file, size);
+		MappedQuickQueue consumer = MappedQuickQueue.attach(file);
+
+		/* single producer, single consumer */
+
+		service.submit(new Producer(producer));
+		service.submit(new Consumer(consumer));
+
+		start.countDown();
+
+		int count = 2;
+		while (count != 0) {
+
+			Future<String> future = service.take();
+			try {
+				String msg = future.get();
+				System.out.println(msg);
+				--count;
+			} catch (ExecutionException e) {
+				throw LaunderThrowable.launderThrowable(e.getCause());
+			}
+		}
+	}
+
+	@Test
+	public void testAttach() throws IOException {
+
+		MappedQuickQueue producer = MappedQuickQueue.create(file, size);
+		byte[] msg = new byte[length];
+
+		for (int i = 0; i < 10; ++i) {
+			msg[0] = (byte) i;
+			assertTrue(producer.offer(msg, 0, length));
+		}
+
+		/* messages are left in the file for whoever attaches */
+
+		final int[] read = new int[1];
+		ByteBufferQuickQueue.MessageHandler handler = new ByteBufferQuickQueue.MessageHandler() {
+
+			@Override
+			public void onMessage(ByteBuffer buffer, int offset, int length) {
+				assertEquals(read[0]++, buffer.get(offset));
+			}
+		};
+
+		assertEquals(4, MappedQuickQueue.attach(file).read(handler, 4));
+		assertEquals(6, MappedQuickQueue.attach(file).read(handler));
+		assertTrue(producer.isEmpty());
+	}
+
+	@Test(expected = IOException.class)
+	public void testAttachInvalid() throws IOException {
+
+		RandomAccessFile raf = new RandomAccessFile(file, "rw");
+		try {
+			raf.setLength(ByteBufferQuickQueue.HEADER_LENGTH + size);
+		} finally {
+			raf.close();
+		}
+
+		MappedQuickQueue.attach(file);
+	}
+
+	@After
+	public void cleanup() throws InterruptedException {
+
+		executorService.shutdown();
+		if (!executorService.awaitTermination(10, TimeUnit.SECONDS)) {
+			throw new IllegalStateException();
+		}
+
+		file.delete();
+	}
+
+	private class Producer implements Callable<String> {
+
+		private final ByteBufferQuickQueue queue;
+
+		Producer(ByteBufferQuickQueue queue) {
+			this.queue = queue;
+		}
+
+		@Override
+		public String call() throws Exception {
+
+			int num = 0;
+
+			String name = Thread.currentThread().getName();
+			start.await();
+
+			long begin = new Date().getTime();
+
+			while (num != max) {
+
+				if (Thread.interrupted()) {
+					throw new InterruptedException();
+				}
+
+				int offset = queue.claim(length);
+
+				if (offset >= 0) {
+					queue.buffer().putInt(offset, num);
+					queue.commit();
+					++num;
+				} else {
+					/* If queue is full */
+					Thread.yield();
+				}
+			}
+
+			return name + ":" + (new Date().getTime() - begin);
+		}
+	}
+
+	private class Consumer implements Callable<String>,
+			ByteBufferQuickQueue.MessageHandler {
+
+		private final ByteBufferQuickQueue queue;
+
+		private int prev = -1;
+
+		Consumer(ByteBufferQuickQueue queue) {
+			this.queue = queue;
+		}
+
+		@Override
+		public void onMessage(ByteBuffer buffer, int offset, int length) {
+
+			int cur = buffer.getInt(offset);
+
+			/* cur = prev + 1 */
+
+			assertTrue("[" + cur + "] should follow [" + prev + "]",
+					cur == (prev + 1));
+			prev = cur;
+		}
+
+		@Override
+		public String call() throws Exception {
+
+			String name = Thread.currentThread().getName();
+			start.await();
+
+			long begin = new Date().getTime();
+
+			while (prev != max - 1) {
+
+				if (Thread.interrupted()) {
+					throw new InterruptedException();
+				}
+
+				if (queue.read(this) == 0) {
+					/* If queue is empty */
+					Thread.yield();
+				}
+			}
+
+			return name + ":" + (new Date().getTime() - begin);
+		}
+	}
+}
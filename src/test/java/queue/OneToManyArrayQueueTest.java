@@ -0,0 +1,194 @@
+package queue;
+
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Date;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.After;
+import org.junit.Test;
+
+/*
+ * Consistency and throughput testing of OneToManyArrayQueue, with consumers
+ * taking one item and K items at a time. Each consumer must see the items in
+ * the order they were added, and every item must be taken exactly once.
+ *
+ * */
+
+public class OneToManyArrayQueueTest {
+
+	/* size of the array to use in testing */
+	private final static int size = 1024;
+
+	/* number of items to use in testing */
+	private final static int max = Integer.MAX_VALUE / 1000;
+
+	/* number of consumers to use in testing */
+	private final static int consumers = 4;
+
+	/* for thread management */
+	private final ExecutorService executorService = Executors
+			.newCachedThreadPool();
+	private final CompletionService<String> service = new ExecutorCompletionService<String>(
+			executorService);
+
+	@After
+	public void cleanup() throws InterruptedException {
+
+		executorService.shutdown();
+		if (!executorService.awaitTermination(10, TimeUnit.SECONDS)) {
+			/* if executor failed to shutdown gracefully */
+			throw new IllegalStateException();
+		}
+	}
+
+	@Test
+	public void testQueue() throws InterruptedException {
+		test(1);
+	}
+
+	@Test
+	public void testBatch() throws InterruptedException {
+		test(16);
+	}
+
+	private void test(int batch) throws InterruptedException {
+
+		System.out.println("OneToManyArrayQueue batch " + batch);
+
+		final OneToManyArrayQueue<Integer> queue = new OneToManyArrayQueue<Integer>(
+				size);
+		final CountDownLatch latch = new CountDownLatch(1);
+		final AtomicInteger consumed = new AtomicInteger(0);
+		final AtomicLong sum = new AtomicLong(0);
+
+		service.submit(new Producer(queue, latch));
+
+		for (int i = 0; i < consumers; ++i) {
+			service.submit(new Consumer(queue, latch, batch, consumed, sum));
+		}
+
+		latch.countDown();
+
+		for (int count = consumers + 1; count != 0; --count) {
+
+			try {
+
+				Future<String> future = service.take();
+				String msg = future.get();
+				System.out.println(msg);
+
+			} catch (ExecutionException e) {
+				throw LaunderThrowable.launderThrowable(e.getCause());
+			}
+		}
+
+		assertTrue(consumed.get() == max);
+		assertTrue(sum.get() == (long) max * (max - 1) / 2);
+		assertNull(queue.poll());
+	}
+
+	private static class Producer implements Callable<String> {
+
+		private final OneToManyArrayQueue<Integer> queue;
+		private final CountDownLatch event;
+
+		Producer(OneToManyArrayQueue<Integer> queue, CountDownLatch event) {
+			this.queue = queue;
+			this.event = event;
+		}
+
+		@Override
+		public String call() throws Exception {
+
+			int num = 0;
+			String name = Thread.currentThread().getName();
+			event.await();
+			long begin = new Date().getTime();
+
+			while (num != max) {
+				if (queue.offer(num)) {
+					++num;
+				} else {
+					/* if queue is full */
+					Thread.yield();
+				}
+			}
+
+			return name + ":" + (new Date().getTime() - begin);
+		}
+	}
+
+	private static class Consumer implements Callable<String> {
+
+		private final OneToManyArrayQueue<Integer> queue;
+		private final CountDownLatch event;
+		private final int batch;
+		private final AtomicInteger count;
+		private final AtomicLong sum;
+
+		Consumer(OneToManyArrayQueue<Integer> queue, CountDownLatch event,
+				int batch, AtomicInteger count, AtomicLong sum) {
+			this.queue = queue;
+			this.event = event;
+			this.batch = batch;
+			this.count = count;
+			this.sum = sum;
+		}
+
+		@Override
+		public String call() throws Exception {
+
+			Integer[] items = new Integer[batch];
+			int last = -1;
+			long total = 0;
+			String name = Thread.currentThread().getName();
+			event.await();
+			long begin = new Date().getTime();
+
+			while (count.get() != max) {
+
+				int n = batch == 1 ? poll(items) : queue.poll(items, 0, batch);
+
+				if (n == 0) {
+					/* if queue is empty */
+					Thread.yield();
+					continue;
+				}
+
+				for (int i = 0; i < n; ++i) {
+
+					int cur = items[i];
+
+					/* cur > last */
+
+					assertTrue("[" + cur + "] should be after [" + last + "]",
+							cur > last);
+					last = cur;
+					total += cur;
+				}
+
+				count.addAndGet(n);
+			}
+
+			sum.addAndGet(total);
+
+			return name + ":" + (new Date().getTime() - begin);
+		}
+
+		private int poll(Integer[] items) {
+			return (items[0] = queue.poll()) == null ? 0 : 1;
+		}
+	}
+}
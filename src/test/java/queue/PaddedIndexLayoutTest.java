@@ -0,0 +1,110 @@
+package queue;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+
+import org.junit.Test;
+
+/*
+ * Layout check of PaddedIndex, and of the queues that hold their indexes in it.
+ *
+ * The offsets of the fields are the ones the JVM has chosen, measured through
+ * UnsafeAccess.
+ *
+ * */
+
+public class PaddedIndexLayoutTest {
+
+	/* size of a cache line */
+	private final static int line = 64;
+
+	@Test
+	public void testPaddedIndex() throws NoSuchFieldException {
+
+		/* the hot fields, value and cache, the owner's two fields */
+
+		Class<?> hot = PaddedIndex.class.getSuperclass();
+		long value = offset(hot.getDeclaredField("value"));
+		long cache = offset(hot.getDeclaredField("cache"));
+
+		/* together, next to each other on a line */
+
+		assertEquals(8, Math.abs(value - cache));
+
+		long first = Math.min(value, cache);
+		long last = Math.max(value, cache) + 8;
+
+		/* the end of the last field, padding included */
+
+		long end = 0;
+		for (Class<?> c = PaddedIndex.class; c != Object.class; c = c
+				.getSuperclass()) {
+			for (Field f : c.getDeclaredFields()) {
+				if (!Modifier.isStatic(f.getModifiers())) {
+					end = Math.max(end, offset(f) + 8);
+				}
+			}
+		}
+
+		long before = first;
+		long after = end - last;
+
+		System.out.println("PaddedIndex: value at " + value + ", cache at "
+				+ cache + ", " + before + " bytes before, " + after
+				+ " bytes after");
+
+		/*
+		 * a whole line between the hot fields and whatever precedes or follows
+		 * the object on the heap
+		 */
+
+		assertTrue("[" + before + "] should be at least [" + line + "]",
+				before >= line);
+		assertTrue("[" + after + "] should be at least [" + line + "]",
+				after >= line);
+	}
+
+	private static long offset(Field f) {
+		return UnsafeAccess.objectFieldOffset(f);
+	}
+
+	@Test
+	public void testQueues() {
+		checkQueue(ArrayQuickQueue.class);
+		checkQueue(ArrayQuickBlockingQueue.class);
+		checkQueue(ConcurrentArrayQueue.class);
+		checkQueue(ConcurrentLinkedArrayQueue.class);
+		checkQueue(FetchAddArrayQueue.class);
+		checkQueue(IntArrayQuickQueue.class);
+		checkQueue(LongArrayQuickQueue.class);
+		checkQueue(OneToManyArrayQueue.class);
+		checkQueue(ManyToOneArrayQueue.class);
+	}
+
+	/*
+	 * The hot fields live in PaddedIndex; what is left in the queue itself is
+	 * read-only.
+	 */
+
+	private void checkQueue(Class<?> c) {
+
+		for (Field f : c.getDeclaredFields()) {
+			if (!Modifier.isStatic(f.getModifiers())) {
+				assertTrue(c.getSimpleName() + "." + f.getName()
+						+ " should be final", Modifier.isFinal(f.getModifiers()));
+			}
+		}
+
+		try {
+			assertEquals(PaddedIndex.class, c.getDeclaredField("putIndex")
+					.getType());
+			assertEquals(PaddedIndex.class, c.getDeclaredField("takeIndex")
+					.getType());
+		} catch (NoSuchFieldException e) {
+			throw LaunderThrowable.launderThrowable(e);
+		}
+	}
+}
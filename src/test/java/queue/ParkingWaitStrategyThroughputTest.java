@@ -0,0 +1,180 @@
+package queue;
+
+import static org.junit.Assert.assertTrue;
+
+import java.util.Date;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import org.junit.After;
+import org.junit.Test;
+
+/*
+ * Throughput testing of many single-producer-single-consumer pairs at once,
+ * each on an ArrayQuickBlockingQueue of its own, comparing ParkingWaitStrategy
+ * with BlockingWaitStrategy.
+ *
+ * The queues are small, so that both sides keep blocking. When the JVM has
+ * virtual threads (JDK 21 and later), every producer and consumer is one, and
+ * there are thousands of pairs; otherwise platform threads are used, with fewer
+ * pairs.
+ *
+ * */
+
+public class ParkingWaitStrategyThroughputTest {
+
+	/* size of the array to use in testing */
+	private final static int size = 16;
+
+	/* number of items to use in testing, over all pairs */
+	private final static int max = Integer.MAX_VALUE / 1000;
+
+	/* whether the JVM has virtual threads */
+	private final static boolean virtual = hasVirtualThreads();
+
+	/* number of pairs to use in testing */
+	private final static int pairs = virtual ? 5000 : 50;
+
+	/* for thread management */
+	private final ExecutorService executorService = virtual ? newVirtualThreadPerTaskExecutor()
+			: Executors.newCachedThreadPool();
+	private final CompletionService<String> service = new ExecutorCompletionService<String>(
+			executorService);
+
+	/* looks the factory up only, so that no executor is left behind */
+	private static boolean hasVirtualThreads() {
+		try {
+			Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+			return true;
+		} catch (NoSuchMethodException e) {
+			return false;
+		}
+	}
+
+	/* a virtual thread per task, on a JVM that has virtual threads */
+	private static ExecutorService newVirtualThreadPerTaskExecutor() {
+		try {
+			return (ExecutorService) Executors.class.getMethod(
+					"newVirtualThreadPerTaskExecutor").invoke(null);
+		} catch (Exception e) {
+			throw LaunderThrowable.launderThrowable(e);
+		}
+	}
+
+	@After
+	public void cleanup() throws InterruptedException {
+
+		executorService.shutdown();
+		if (!executorService.awaitTermination(10, TimeUnit.SECONDS)) {
+			/* if executor failed to shutdown gracefully */
+			throw new IllegalStateException();
+		}
+	}
+
+	@Test
+	public void testParking() throws InterruptedException {
+		test(ParkingWaitStrategy::new);
+	}
+
+	@Test
+	public void testBlocking() throws InterruptedException {
+		test(BlockingWaitStrategy::new);
+	}
+
+	private void test(Supplier<WaitStrategy> waitStrategy)
+			throws InterruptedException {
+
+		System.out.println(pairs + (virtual ? " virtual" : " platform")
+				+ " pairs, " + waitStrategy.get().getClass().getSimpleName());
+
+		final CountDownLatch latch = new CountDownLatch(1);
+
+		for (int i = 0; i < pairs; ++i) {
+
+			BlockingQueue<Integer> queue = new ArrayQuickBlockingQueue<Integer>(
+					size, waitStrategy.get());
+
+			service.submit(new Producer(queue, latch, max / pairs));
+			service.submit(new Consumer(queue, latch, max / pairs));
+		}
+
+		long begin = new Date().getTime();
+		latch.countDown();
+
+		for (int count = 2 * pairs; count != 0; --count) {
+			try {
+				service.take().get();
+			} catch (ExecutionException e) {
+				throw LaunderThrowable.launderThrowable(e.getCause());
+			}
+		}
+
+		System.out.println("all pairs:" + (new Date().getTime() - begin));
+	}
+
+	private static class Producer implements Callable<String> {
+
+		private final BlockingQueue<Integer> queue;
+		private final CountDownLatch event;
+		private final int count;
+
+		Producer(BlockingQueue<Integer> queue, CountDownLatch event, int count) {
+			this.queue = queue;
+			this.event = event;
+			this.count = count;
+		}
+
+		@Override
+		public String call() throws Exception {
+
+			int num = 0;
+			event.await();
+
+			while (num != count) {
+				queue.put(num++);
+			}
+
+			return null;
+		}
+	}
+
+	private static class Consumer implements Callable<String> {
+
+		private final BlockingQueue<Integer> queue;
+		private final CountDownLatch event;
+		private final int count;
+
+		Consumer(BlockingQueue<Integer> queue, CountDownLatch event, int count) {
+			this.queue = queue;
+			this.event = event;
+			this.count = count;
+		}
+
+		@Override
+		public String call() throws Exception {
+
+			int num = 0;
+			event.await();
+
+			while (num != count) {
+
+				int cur = queue.take();
+
+				/* cur = num */
+
+				assertTrue("[" + cur + "] should be [" + num + "]", cur == num);
+				++num;
+			}
+
+			return null;
+		}
+	}
+}
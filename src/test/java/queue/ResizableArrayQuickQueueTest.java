@@ -0,0 +1,208 @@
+package queue;
+
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Date;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Test;
+
+/*
+ * Resizing, consistency and throughput testing of ResizableArrayQuickQueue,
+ * using ArrayQuickQueue of the maximum size as benchmark. The producer adds
+ * in bursts, so that the ring grows and shrinks all the time.
+ *
+ * */
+
+public class ResizableArrayQuickQueueTest {
+
+	/* minimum size of the array to use in testing */
+	private final static int minSize = 4;
+
+	/* maximum size of the array to use in testing */
+	private final static int maxSize = 1024;
+
+	/* number of items to use in testing */
+	private final static int max = Integer.MAX_VALUE / 100;
+
+	/* number of items per burst, then the producer waits for the queue to drain */
+	private final static int burst = 10000;
+
+	/* enough single item laps, in maxSize, to shrink from maxSize to minSize */
+	private final static int quiet = 3 * ResizableArrayQuickQueue.QUIET_LAPS;
+
+	/* for thread management */
+	private final ExecutorService executorService = Executors
+			.newCachedThreadPool();
+	private final CompletionService<String> service = new ExecutorCompletionService<String>(
+			executorService);
+
+	@After
+	public void cleanup() throws InterruptedException {
+
+		executorService.shutdown();
+		if (!executorService.awaitTermination(10, TimeUnit.SECONDS)) {
+			/* if executor failed to shutdown gracefully */
+			throw new IllegalStateException();
+		}
+	}
+
+	/* grows up to maxSize when filled, back down to minSize when quiet */
+
+	@Test
+	public void testResize() {
+
+		ResizableArrayQuickQueue<Integer> queue = new ResizableArrayQuickQueue<Integer>(
+				minSize, maxSize);
+		assertTrue(queue.capacity() == minSize);
+
+		int put = 0;
+		int take = 0;
+
+		while (queue.offer(put)) {
+			++put;
+		}
+
+		assertTrue(put == maxSize && queue.capacity() == maxSize);
+		assertTrue(queue.size() == maxSize);
+
+		while (take != put) {
+			assertTrue(queue.poll() == take++);
+		}
+
+		assertNull(queue.poll());
+
+		/* one item at a time: every lap is quiet */
+
+		for (int i = 0; i < quiet * maxSize; ++i) {
+			assertTrue(queue.offer(put++));
+			assertTrue(queue.poll() == take++);
+		}
+
+		assertTrue(queue.capacity() == minSize);
+	}
+
+	@Test
+	public void testQueue() throws InterruptedException {
+		test(new ResizableArrayQuickQueue<Integer>(minSize, maxSize));
+	}
+
+	@Test
+	public void benchmark() throws InterruptedException {
+		test(new ArrayQuickQueue<Integer>(maxSize));
+	}
+
+	private void test(Queue<Integer> queue) throws InterruptedException {
+
+		System.out.println(queue.getClass().getSimpleName());
+
+		final CountDownLatch latch = new CountDownLatch(1);
+
+		service.submit(new Producer(queue, latch));
+		service.submit(new Consumer(queue, latch));
+
+		latch.countDown();
+
+		for (int count = 2; count != 0; --count) {
+
+			try {
+
+				Future<String> future = service.take();
+				String msg = future.get();
+				System.out.println(msg);
+
+			} catch (ExecutionException e) {
+				throw LaunderThrowable.launderThrowable(e.getCause());
+			}
+		}
+
+		assertNull(queue.poll());
+	}
+
+	private static class Producer implements Callable<String> {
+
+		private final Queue<Integer> queue;
+		private final CountDownLatch event;
+
+		Producer(Queue<Integer> queue, CountDownLatch event) {
+			this.queue = queue;
+			this.event = event;
+		}
+
+		@Override
+		public String call() throws Exception {
+
+			int num = 0;
+			String name = Thread.currentThread().getName();
+			event.await();
+			long begin = new Date().getTime();
+
+			while (num != max) {
+
+				if (queue.offer(num)) {
+					++num;
+				} else {
+					/* if queue is full */
+					Thread.yield();
+				}
+
+				if (num % burst == 0) {
+					while (!queue.isEmpty()) {
+						Thread.yield();
+					}
+				}
+			}
+
+			return name + ":" + (new Date().getTime() - begin);
+		}
+	}
+
+	private static class Consumer implements Callable<String> {
+
+		private final Queue<Integer> queue;
+		private final CountDownLatch event;
+
+		Consumer(Queue<Integer> queue, CountDownLatch event) {
+			this.queue = queue;
+			this.event = event;
+		}
+
+		@Override
+		public String call() throws Exception {
+
+			int num = 0;
+			String name = Thread.currentThread().getName();
+			event.await();
+			long begin = new Date().getTime();
+
+			while (num != max) {
+
+				Integer cur = queue.poll();
+
+				if (cur == null) {
+					/* if queue is empty */
+					Thread.yield();
+					continue;
+				}
+
+				/* cur = num */
+
+				assertTrue("[" + cur + "] should be [" + num + "]", cur == num);
+				++num;
+			}
+
+			return name + ":" + (new Date().getTime() - begin);
+		}
+	}
+}
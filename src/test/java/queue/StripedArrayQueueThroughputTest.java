@@ -0,0 +1,213 @@
+package queue;
+
+import static org.junit.Assert.assertTrue;
+
+import java.util.Date;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+import org.junit.After;
+import org.junit.Test;
+
+/*
+ * Consistency and throughput testing of StripedArrayQueue with 4, 8 and 16
+ * threads, half of them producers and half of them consumers, using
+ * ConcurrentArrayQueue as benchmark. Order is relaxed, but every item must be
+ * taken exactly once.
+ *
+ * */
+
+public class StripedArrayQueueThroughputTest {
+
+	/* size of the array to use in testing */
+	private final static int size = 1024;
+
+	/* number of items to use in testing */
+	private final static int max = Integer.MAX_VALUE / 1000;
+
+	/* numbers of threads to use in testing */
+	private final static int[] threads = { 4, 8, 16 };
+
+	/* number of lanes to use in testing */
+	private final static int lanes = 8;
+
+	/* thread management */
+	private final ExecutorService executorService = Executors
+			.newCachedThreadPool();
+	private final CompletionService<String> service = new ExecutorCompletionService<String>(
+			executorService);
+
+	@After
+	public void cleanup() throws InterruptedException {
+
+		executorService.shutdown();
+		if (!executorService.awaitTermination(10, TimeUnit.SECONDS)) {
+			throw new IllegalStateException();
+		}
+	}
+
+	@Test
+	public void testQueue() throws InterruptedException {
+		test(() -> new StripedArrayQueue<Integer>(size, lanes));
+	}
+
+	/* lanes fill up and run dry all the time: items spill over and are stolen */
+
+	@Test
+	public void testStealing() throws InterruptedException {
+		test(() -> new StripedArrayQueue<Integer>(lanes, lanes));
+	}
+
+	@Test
+	public void benchmark() throws InterruptedException {
+		test(() -> new ConcurrentArrayQueue<Integer>(size));
+	}
+
+	/* offer() fails only once every lane is full, poll() once every lane is empty */
+
+	@Test
+	public void testCapacity() {
+
+		StripedArrayQueue<Integer> queue = new StripedArrayQueue<Integer>(4, 2);
+		assertTrue(queue.capacity() == 4);
+
+		for (int i = 0; i < 4; ++i) {
+			assertTrue(queue.offer(i));
+		}
+
+		assertTrue(!queue.offer(4));
+		assertTrue(queue.size() == 4);
+
+		long sum = 0;
+		for (int i = 0; i < 4; ++i) {
+			sum += queue.poll();
+		}
+
+		assertTrue(sum == 6 && queue.poll() == null && queue.isEmpty());
+	}
+
+	private void test(Supplier<Queue<Integer>> supplier)
+			throws InterruptedException {
+
+		for (int n : threads) {
+
+			final Queue<Integer> queue = supplier.get();
+			final CountDownLatch latch = new CountDownLatch(1);
+			final AtomicInteger produced = new AtomicInteger(0);
+			final AtomicInteger consumed = new AtomicInteger(0);
+			final AtomicLong sum = new AtomicLong(0);
+
+			/* Multiple producers, multiple consumers */
+
+			for (int i = 0; i < n / 2; ++i) {
+				service.submit(new Producer(queue, latch, produced));
+				service.submit(new Consumer(queue, latch, consumed, sum));
+			}
+
+			long begin = new Date().getTime();
+			latch.countDown();
+
+			for (int i = n; i != 0; --i) {
+
+				Future<String> future = service.take();
+				try {
+					future.get();
+				} catch (ExecutionException e) {
+					throw LaunderThrowable.launderThrowable(e.getCause());
+				}
+			}
+
+			System.out.println(queue.getClass().getSimpleName() + " " + n
+					+ " threads:" + (new Date().getTime() - begin));
+
+			assertTrue(sum.get() == (long) max * (max - 1) / 2);
+			assertTrue(queue.isEmpty());
+		}
+	}
+
+	private static class Producer implements Callable<String> {
+
+		private final Queue<Integer> queue;
+		private final CountDownLatch event;
+		private final AtomicInteger count;
+
+		Producer(Queue<Integer> queue, CountDownLatch event, AtomicInteger count) {
+			this.queue = queue;
+			this.event = event;
+			this.count = count;
+		}
+
+		@Override
+		public String call() throws Exception {
+
+			event.await();
+
+			while (true) {
+
+				int num = count.getAndIncrement();
+				if (num >= max) {
+					break;
+				}
+
+				while (!queue.offer(num)) {
+					/* if queue is full */
+					Thread.yield();
+				}
+			}
+
+			return null;
+		}
+	}
+
+	private static class Consumer implements Callable<String> {
+
+		private final Queue<Integer> queue;
+		private final CountDownLatch event;
+		private final AtomicInteger count;
+		private final AtomicLong sum;
+
+		Consumer(Queue<Integer> queue, CountDownLatch event,
+				AtomicInteger count, AtomicLong sum) {
+			this.queue = queue;
+			this.event = event;
+			this.count = count;
+			this.sum = sum;
+		}
+
+		@Override
+		public String call() throws Exception {
+
+			long total = 0;
+			event.await();
+
+			while (count.get() < max) {
+
+				Integer num = queue.poll();
+
+				if (num == null) {
+					/* if queue is empty */
+					Thread.yield();
+					continue;
+				}
+
+				total += num;
+				count.incrementAndGet();
+			}
+
+			sum.addAndGet(total);
+
+			return null;
+		}
+	}
+}
@@ -0,0 +1,248 @@
+package queue;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Date;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import org.junit.After;
+import org.junit.Test;
+
+/*
+ * Consistency and throughput testing of ArrayQuickBlockingQueue with each of the
+ * wait strategies, and of their timeouts.
+ *
+ * */
+
+public class WaitStrategyTest {
+
+	/* size of the array to use in testing */
+	private final static int size = 1024;
+
+	/* number of items to use in testing */
+	private final static int max = Integer.MAX_VALUE / 10000;
+
+	/* timeout to use in testing, in milliseconds */
+	private final static long timeout = 50;
+
+	/* for thread management */
+	private final ExecutorService executorService = Executors
+			.newCachedThreadPool();
+	private final CompletionService<String> service = new ExecutorCompletionService<String>(
+			executorService);
+
+	@After
+	public void cleanup() throws InterruptedException {
+
+		executorService.shutdown();
+		if (!executorService.awaitTermination(10, TimeUnit.SECONDS)) {
+			/* if executor failed to shutdown gracefully */
+			throw new IllegalStateException();
+		}
+	}
+
+	@Test
+	public void testBusySpin() throws InterruptedException {
+		test(BusySpinWaitStrategy::new);
+	}
+
+	@Test
+	public void testYielding() throws InterruptedException {
+		test(YieldingWaitStrategy::new);
+	}
+
+	@Test
+	public void testBackoff() throws InterruptedException {
+		test(BackoffWaitStrategy::new);
+	}
+
+	@Test
+	public void testBlocking() throws InterruptedException {
+		test(BlockingWaitStrategy::new);
+	}
+
+	@Test
+	public void testParking() throws InterruptedException {
+		test(ParkingWaitStrategy::new);
+	}
+
+	/*
+	 * offer() and poll() wake up a take() and a put() waiting on the lock, as
+	 * they signal like every other add and remove.
+	 */
+
+	@Test
+	public void testNonBlockingSignals() throws Exception {
+
+		final BlockingQueue<Integer> queue = new ArrayQuickBlockingQueue<Integer>(
+				1, new BlockingWaitStrategy());
+
+		Future<Integer> take = executorService.submit(new Callable<Integer>() {
+
+			@Override
+			public Integer call() throws Exception {
+				return queue.take();
+			}
+		});
+
+		Thread.sleep(timeout);
+		assertTrue(queue.offer(0));
+		assertTrue(take.get(10, TimeUnit.SECONDS) == 0);
+
+		assertTrue(queue.offer(1));
+
+		Future<?> put = executorService.submit(new Callable<Void>() {
+
+			@Override
+			public Void call() throws Exception {
+				queue.put(2);
+				return null;
+			}
+		});
+
+		Thread.sleep(timeout);
+		assertTrue(queue.poll() == 1);
+		put.get(10, TimeUnit.SECONDS);
+		assertTrue(queue.poll() == 2);
+	}
+
+	/* each queue gets a strategy of its own */
+
+	private void test(Supplier<WaitStrategy> waitStrategy)
+			throws InterruptedException {
+
+		System.out.println("ArrayQuickBlockingQueue "
+				+ waitStrategy.get().getClass().getSimpleName());
+
+		timeouts(new ArrayQuickBlockingQueue<Integer>(1, waitStrategy.get()));
+
+		final CountDownLatch latch = new CountDownLatch(1);
+		final BlockingQueue<Integer> queue = new ArrayQuickBlockingQueue<Integer>(
+				size, waitStrategy.get());
+
+		/* single producer, single consumer */
+
+		service.submit(new Producer(queue, latch));
+		service.submit(new Consumer(queue, latch));
+
+		latch.countDown();
+
+		int count = 2;
+
+		while (count != 0) {
+
+			try {
+
+				Future<String> future = service.take();
+				String msg = future.get();
+				System.out.println(msg);
+				--count;
+
+			} catch (ExecutionException e) {
+				throw LaunderThrowable.launderThrowable(e.getCause());
+			}
+		}
+	}
+
+	private void timeouts(BlockingQueue<Integer> queue)
+			throws InterruptedException {
+
+		/* empty */
+
+		long begin = System.nanoTime();
+		assertNull(queue.poll(timeout, TimeUnit.MILLISECONDS));
+		assertTrue(System.nanoTime() - begin >= TimeUnit.MILLISECONDS
+				.toNanos(timeout));
+
+		/* full */
+
+		assertTrue(queue.offer(0, timeout, TimeUnit.MILLISECONDS));
+
+		begin = System.nanoTime();
+		assertFalse(queue.offer(1, timeout, TimeUnit.MILLISECONDS));
+		assertTrue(System.nanoTime() - begin >= TimeUnit.MILLISECONDS
+				.toNanos(timeout));
+
+		/* interrupted while waiting */
+
+		Thread.currentThread().interrupt();
+		try {
+			queue.put(1);
+			throw new AssertionError("should be interrupted");
+		} catch (InterruptedException e) {
+			assertFalse(Thread.interrupted());
+		}
+
+		assertTrue(queue.take() == 0);
+	}
+
+	private static class Producer implements Callable<String> {
+
+		private final BlockingQueue<Integer> queue;
+		private final CountDownLatch event;
+
+		Producer(BlockingQueue<Integer> queue, CountDownLatch event) {
+			this.queue = queue;
+			this.event = event;
+		}
+
+		@Override
+		public String call() throws Exception {
+
+			int num = 0;
+			String name = Thread.currentThread().getName();
+			event.await();
+			long begin = new Date().getTime();
+
+			while (num != max) {
+				queue.put(num++);
+			}
+
+			return name + ":" + (new Date().getTime() - begin);
+		}
+	}
+
+	private static class Consumer implements Callable<String> {
+
+		private final BlockingQueue<Integer> queue;
+		private final CountDownLatch event;
+
+		Consumer(BlockingQueue<Integer> queue, CountDownLatch event) {
+			this.queue = queue;
+			this.event = event;
+		}
+
+		@Override
+		public String call() throws Exception {
+
+			int num = 0;
+			String name = Thread.currentThread().getName();
+			event.await();
+			long begin = new Date().getTime();
+
+			while (num != max) {
+
+				int cur = queue.take();
+
+				/* cur = num */
+
+				assertTrue("[" + cur + "] should be [" + num + "]", cur == num);
+				++num;
+			}
+
+			return name + ":" + (new Date().getTime() - begin);
+		}
+	}
+}